@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Part handler which passes everything to a blackhole, so the
+ * benchmarks measure the parser and nothing else.
+ */
+final class BlackholePartHandler implements MultipartParser.PartHandler {
+
+    private final Blackhole blackhole;
+
+    BlackholePartHandler(final Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void beginPart(final Headers headers) {
+        blackhole.consume(headers);
+    }
+
+    @Override
+    public void data(final ByteBuffer buffer) {
+        blackhole.consume(buffer.remaining());
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public void endPart() {
+        blackhole.consume(true);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.github.elopteryx.upload.BufferPool;
+import com.github.elopteryx.upload.CompiledUploadParser;
+import com.github.elopteryx.upload.PartOutput;
+import com.github.elopteryx.upload.UploadContext;
+import com.github.elopteryx.upload.UploadParser;
+import com.github.elopteryx.upload.util.NullChannel;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole blocking upload, from the servlet request to the part
+ * outputs, with the body served from memory. The parts are written either
+ * to a channel discarding everything, or to a file. The buffers are either
+ * allocated for every request or taken from a pool. The parser is either
+ * configured for every request or compiled once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockingUploadParserBenchmark {
+
+    private static final int PART_COUNT = 4;
+
+    /**
+     * The destination of the uploaded parts.
+     */
+    public enum Sink {
+        NULL, FILE
+    }
+
+    @Param({"NULL", "FILE"})
+    public Sink sink;
+
+    @Param({"65536", "1048576"})
+    public int partSize;
+
+    @Param({"4096", "65536", "1048576"})
+    public int chunkSize;
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    private String contentType;
+
+    private byte[] body;
+
+    private Path directory;
+
+    private BufferPool bufferPool;
+
+    private CompiledUploadParser compiledParser;
+
+    @Setup
+    public void setup() throws IOException {
+        final var boundary = MultipartBodies.boundary(40);
+        contentType = MultipartBodies.contentType(boundary);
+        body = MultipartBodies.body(boundary, MultipartBodies.FILE_HEADERS, MultipartBodies.content(partSize), PART_COUNT);
+        directory = Files.createTempDirectory("upload-parser-benchmark");
+        bufferPool = pooled ? BufferPool.striped() : BufferPool.unpooled();
+        compiledParser = UploadParser.newParser()
+                .onPartBegin((uploadContext, buffer) -> partOutput())
+                .maxBytesUsed(chunkSize * 2)
+                .bufferPool(bufferPool)
+                .compile();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(directory.resolve("part.bin"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public UploadContext doBlockingParse(final Throughput throughput) throws IOException, ServletException {
+        final var context = UploadParser.newParser()
+                .onPartBegin((uploadContext, buffer) -> partOutput())
+                .maxBytesUsed(chunkSize * 2)
+                .bufferPool(bufferPool)
+                .doBlockingParse(request());
+        throughput.add(body.length);
+        return context;
+    }
+
+    @Benchmark
+    public UploadContext doBlockingParseCompiled(final Throughput throughput) throws IOException, ServletException {
+        final var context = compiledParser.doBlockingParse(request());
+        throughput.add(body.length);
+        return context;
+    }
+
+    private PartOutput partOutput() throws IOException {
+        return switch (sink) {
+            case NULL -> PartOutput.from(new NullChannel());
+            case FILE -> PartOutput.from(FileChannel.open(directory.resolve("part.bin"), CREATE, WRITE, TRUNCATE_EXISTING));
+        };
+    }
+
+    /**
+     * Creates a request serving the body from memory. Only the
+     * methods called by the parser are implemented.
+     * @return The request
+     */
+    private HttpServletRequest request() {
+        final var inputStream = new InMemoryServletInputStream(body);
+        return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getMethod" -> "POST";
+                case "getContentType" -> contentType;
+                case "getHeader" -> Headers.CONTENT_TYPE.equalsIgnoreCase((String) args[0]) ? contentType : null;
+                case "getContentLengthLong" -> (long) body.length;
+                case "getInputStream" -> inputStream;
+                default -> null;
+            });
+    }
+}
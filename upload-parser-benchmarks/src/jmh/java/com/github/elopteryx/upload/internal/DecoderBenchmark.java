@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the content transfer decoders. The throughput is
+ * calculated from the size of the encoded input.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DecoderBenchmark {
+
+    /**
+     * The default buffer size of the parser.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    @Param({"4096", "65536", "1048576"})
+    public int size;
+
+    private byte[] base64;
+
+    private byte[] quotedPrintable;
+
+    private ByteBuffer target;
+
+    private MultipartParser.QuotedPrintableEncoding quotedPrintableEncoding;
+
+    @Setup
+    public void setup() {
+        base64 = Base64.getMimeEncoder().encode(MultipartBodies.content(size));
+        quotedPrintable = MultipartBodies.quotedPrintable(MultipartBodies.text(size));
+        target = ByteBuffer.allocate(size);
+        quotedPrintableEncoding = new MultipartParser.QuotedPrintableEncoding(BUFFER_SIZE);
+    }
+
+    @Benchmark
+    public ByteBuffer base64Decode(final Throughput throughput) throws IOException {
+        target.clear();
+        new Base64Decoder().decode(ByteBuffer.wrap(base64), target);
+        throughput.add(base64.length);
+        return target;
+    }
+
+    @Benchmark
+    public void quotedPrintableHandle(final Throughput throughput, final Blackhole blackhole) throws IOException {
+        final var handler = new BlackholePartHandler(blackhole);
+        quotedPrintableEncoding.handle(handler, ByteBuffer.wrap(quotedPrintable));
+        quotedPrintableEncoding.finish(handler);
+        throughput.add(quotedPrintable.length);
+    }
+}
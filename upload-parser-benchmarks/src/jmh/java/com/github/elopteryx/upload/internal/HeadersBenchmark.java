@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the header handling: parsing the header blocks of the parts,
+ * storing and looking up the values, and the helpers extracting
+ * values from them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeadersBenchmark {
+
+    /**
+     * Many small parts, so the header blocks dominate the body.
+     */
+    private static final int PART_COUNT = 256;
+
+    private static final String BOUNDARY = MultipartBodies.boundary(40);
+
+    private static final String CONTENT_TYPE = "multipart/form-data; charset=UTF-8; boundary=" + BOUNDARY;
+
+    private static final String CONTENT_DISPOSITION = "form-data; name=\"file\"; filename=\"upload.bin\"";
+
+    private static final String HEADERS = MultipartBodies.FILE_HEADERS + "Content-Transfer-Encoding: binary\r\n";
+
+    private byte[] boundary;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        boundary = BOUNDARY.getBytes(US_ASCII);
+        body = MultipartBodies.body(BOUNDARY, HEADERS, "value".getBytes(US_ASCII), PART_COUNT);
+    }
+
+    @Benchmark
+    public boolean parseHeaderBlocks(final Throughput throughput, final Blackhole blackhole) throws IOException {
+        final var parseState = MultipartParser.beginParse(new BlackholePartHandler(blackhole), boundary, body.length, UTF_8);
+        parseState.parse(ByteBuffer.wrap(body));
+        throughput.add(body.length);
+        return parseState.isComplete();
+    }
+
+    @Benchmark
+    public String addAndGetHeaders() {
+        final var headers = new Headers();
+        headers.addHeader(Headers.CONTENT_DISPOSITION, CONTENT_DISPOSITION);
+        headers.addHeader(Headers.CONTENT_TYPE, "application/octet-stream");
+        headers.addHeader("Content-Transfer-Encoding", "binary");
+        return headers.getHeader(Headers.CONTENT_DISPOSITION);
+    }
+
+    @Benchmark
+    public String extractBoundaryFromHeader() {
+        return Headers.extractBoundaryFromHeader(CONTENT_TYPE);
+    }
+
+    @Benchmark
+    public String extractQuotedValueFromHeader() {
+        return Headers.extractQuotedValueFromHeader(CONTENT_DISPOSITION, "filename");
+    }
+}
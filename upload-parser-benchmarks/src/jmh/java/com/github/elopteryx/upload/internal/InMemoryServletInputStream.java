@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+
+/**
+ * Servlet input stream reading from an array, the benchmark
+ * counterpart of the mock stream used by the tests. Unlike that, it
+ * serves bulk reads and any body.
+ */
+class InMemoryServletInputStream extends ServletInputStream {
+
+    private final byte[] body;
+
+    private int position;
+
+    InMemoryServletInputStream(final byte[] body) {
+        this.body = body;
+    }
+
+    @Override
+    public int read() {
+        return position < body.length ? body[position++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+        if (position >= body.length) {
+            return -1;
+        }
+        final var count = Math.min(length, body.length - position);
+        System.arraycopy(body, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return position >= body.length;
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public void setReadListener(final ReadListener readListener) {
+        throw new UnsupportedOperationException("Only blocking reads are supported!");
+    }
+}
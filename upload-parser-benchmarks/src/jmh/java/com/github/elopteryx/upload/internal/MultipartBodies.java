@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Generates the multipart request bodies for the benchmarks. The content
+ * is random, but seeded, so every run parses the same bytes.
+ */
+final class MultipartBodies {
+
+    /**
+     * The characters used for the generated boundaries.
+     */
+    private static final String BOUNDARY_CHARACTERS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /**
+     * The header block of a typical file part.
+     */
+    static final String FILE_HEADERS = "Content-Disposition: form-data; name=\"file\"; filename=\"upload.bin\"\r\n"
+            + "Content-Type: application/octet-stream\r\n";
+
+    private MultipartBodies() {
+        // No need to instantiate
+    }
+
+    /**
+     * Returns a boundary with the given length.
+     * @param length The length of the boundary, at most 70 according to RFC 2046
+     * @return The boundary value, without the leading dashes
+     */
+    static String boundary(final int length) {
+        final var random = new Random(length);
+        final var builder = new StringBuilder(length);
+        for (var i = 0; i < length; i++) {
+            builder.append(BOUNDARY_CHARACTERS.charAt(random.nextInt(BOUNDARY_CHARACTERS.length())));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the content type header value for the given boundary.
+     * @param boundary The boundary value
+     * @return The header value
+     */
+    static String contentType(final String boundary) {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    /**
+     * Returns random binary content, as an uploaded file would look like.
+     * @param size The number of bytes
+     * @return The content
+     */
+    static byte[] content(final int size) {
+        final var content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    /**
+     * Returns random text, mostly printable ASCII characters, with some
+     * ISO-8859-1 letters mixed in, as a form field or mail body would look like.
+     * @param size The number of bytes
+     * @return The content
+     */
+    static byte[] text(final int size) {
+        final var random = new Random(size);
+        final var content = new byte[size];
+        for (var i = 0; i < size; i++) {
+            content[i] = (byte) (random.nextInt(10) == 0 ? 0xC0 + random.nextInt(64) : ' ' + random.nextInt(95));
+        }
+        return content;
+    }
+
+    /**
+     * Encodes the content with the quoted-printable encoding, using soft line breaks
+     * to keep the lines at most 76 characters long.
+     * @param content The content
+     * @return The encoded bytes
+     */
+    static byte[] quotedPrintable(final byte[] content) {
+        final var output = new ByteArrayOutputStream(content.length * 2);
+        var lineLength = 0;
+        for (final byte value : content) {
+            if (lineLength > 72) {
+                output.writeBytes("=\r\n".getBytes(US_ASCII));
+                lineLength = 0;
+            }
+            final var unsigned = value & 0xFF;
+            if (unsigned >= '!' && unsigned <= '~' && unsigned != '=') {
+                output.write(unsigned);
+                lineLength++;
+            } else {
+                output.writeBytes(String.format("=%02X", unsigned).getBytes(US_ASCII));
+                lineLength += 3;
+            }
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Creates a multipart body with the given number of identical parts.
+     * @param boundary The boundary value
+     * @param headers The header block of each part, every line ending with CRLF
+     * @param content The body of each part
+     * @param partCount The number of parts
+     * @return The bytes of the request body
+     */
+    static byte[] body(final String boundary, final String headers, final byte[] content, final int partCount) {
+        final var delimiter = ("--" + boundary + "\r\n" + headers + "\r\n").getBytes(US_ASCII);
+        final var output = new ByteArrayOutputStream(partCount * (delimiter.length + content.length + 2) + boundary.length() + 6);
+        for (var i = 0; i < partCount; i++) {
+            output.writeBytes(delimiter);
+            output.writeBytes(content);
+            output.writeBytes("\r\n".getBytes(US_ASCII));
+        }
+        output.writeBytes(("--" + boundary + "--\r\n").getBytes(US_ASCII));
+        return output.toByteArray();
+    }
+
+    /**
+     * Passes the body to the parser in chunks, like consecutive reads
+     * from the request would. The chunks are views of the same buffer.
+     * @param parseState The parser
+     * @param body The request body
+     * @param chunkSize The maximum size of one chunk
+     * @throws IOException If an error occurred with the I/O
+     */
+    static void parse(final MultipartParser.ParseState parseState, final byte[] body, final int chunkSize) throws IOException {
+        final var buffer = ByteBuffer.wrap(body);
+        for (var start = 0; start < body.length; start += chunkSize) {
+            buffer.limit(Math.min(start + chunkSize, body.length)).position(start);
+            parseState.parse(buffer);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the multipart parser on its own, with the body already in memory.
+ * The parts use the identity encoding, so the cost is dominated by the
+ * boundary search.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultipartParserBenchmark {
+
+    private static final int PART_COUNT = 4;
+
+    @Param({"16", "40", "70"})
+    public int boundaryLength;
+
+    @Param({"1024", "65536", "1048576"})
+    public int partSize;
+
+    @Param({"4096", "65536", "1048576"})
+    public int chunkSize;
+
+    private byte[] boundary;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        final var value = MultipartBodies.boundary(boundaryLength);
+        boundary = value.getBytes(US_ASCII);
+        body = MultipartBodies.body(value, MultipartBodies.FILE_HEADERS, MultipartBodies.content(partSize), PART_COUNT);
+    }
+
+    @Benchmark
+    public boolean parse(final Throughput throughput, final Blackhole blackhole) throws IOException {
+        final var parseState = MultipartParser.beginParse(new BlackholePartHandler(blackhole), boundary, chunkSize, UTF_8);
+        MultipartBodies.parse(parseState, body, chunkSize);
+        throughput.add(body.length);
+        return parseState.isComplete();
+    }
+}
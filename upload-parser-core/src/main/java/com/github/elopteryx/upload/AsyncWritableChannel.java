@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An output which writes the bytes of a part asynchronously. It can be passed
+ * to the parser with {@link PartOutput#from(AsyncWritableChannel)}.
+ *
+ * <p>When parsing asynchronously, the parser stops reading the request stream
+ * while a write is in progress, and continues reading when the returned stage completes.
+ * This way a slow output slows down the upload, instead of the data piling up in the
+ * memory. The blocking parser simply waits for each write to complete.</p>
+ *
+ * <p>The parser does not call the write method again until the previous stage completed,
+ * and it calls the flush and the close methods after the last write completed. The methods may be called
+ * from different threads, but never concurrently.</p>
+ */
+public interface AsyncWritableChannel extends Closeable {
+
+    /**
+     * Writes every remaining byte of the given buffer. The parser does not modify
+     * the buffer until the returned stage completes, the implementation can use it until then.
+     * @param buffer The buffer to write, the position should be at the limit when the stage completes
+     * @return A stage which completes when the buffer can be reused or completes exceptionally
+     *         if the bytes could not be written
+     */
+    CompletionStage<Void> write(ByteBuffer buffer);
+
+    /**
+     * Returns a stage which completes when the data of the completed writes has actually
+     * been written, for implementations which complete the writes before that, for example
+     * by copying the data. The parser calls this after the last write, before closing the channel.
+     * By default it returns a completed stage.
+     * @return A stage which completes when every write is done or completes exceptionally
+     *         if the data could not be written
+     */
+    default CompletionStage<Void> flush() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Closes the output, called after every write has been completed.
+     * @throws IOException If an error occurred with the I/O
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload;
+
+import com.github.elopteryx.upload.internal.StripedBufferPool;
+import com.github.elopteryx.upload.internal.UnpooledBufferPool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Supplies the buffers used by the parser. The buffers are acquired when
+ * the parsing starts and released when it ends, whether it was successful
+ * or not, so they can be reused by the following requests. The implementations
+ * must be thread safe, as one pool is usually shared between the parsers.
+ *
+ * <p>Note that the buffer passed to the {@link OnPartBegin} callback comes from
+ * the pool as well, so if pooling is used then it must not be retained after
+ * the parsing has ended.
+ */
+public interface BufferPool {
+
+    /**
+     * Returns a buffer with at least the given capacity. The position
+     * of the buffer is zero and its limit is its capacity.
+     * @param capacity The minimum capacity of the buffer
+     * @param direct Whether a direct buffer is required, instead of a heap buffer
+     * @return A buffer, which should be released after use
+     */
+    ByteBuffer acquire(int capacity, boolean direct);
+
+    /**
+     * Returns the buffer to the pool. The buffer must not be used
+     * after this by the caller.
+     * @param buffer A buffer acquired from this pool
+     */
+    void release(ByteBuffer buffer);
+
+    /**
+     * Returns a pool which allocates a new buffer every time and
+     * leaves the released ones to the garbage collector. This is the
+     * default one used by the parser.
+     * @return The pool instance
+     */
+    static BufferPool unpooled() {
+        return UnpooledBufferPool.INSTANCE;
+    }
+
+    /**
+     * Creates a bounded pool, with the default settings. See {@link #striped(int, int)}.
+     * @return A new pool instance
+     */
+    static BufferPool striped() {
+        return new StripedBufferPool(StripedBufferPool.DEFAULT_MAX_CAPACITY, StripedBufferPool.DEFAULT_MAX_BUFFERS_PER_CLASS);
+    }
+
+    /**
+     * Creates a bounded pool. The buffers are grouped into size classes, the capacities being the
+     * powers of two, heap and direct buffers are kept separately. The pool is split into stripes
+     * based on the current thread, to reduce the contention between the concurrent requests.
+     * Larger buffers than the maximum capacity are allocated every time, and the released buffers
+     * are dropped when their size class is full.
+     * @param maxCapacity The capacity of the largest pooled buffers
+     * @param maxBuffersPerClass The number of buffers retained for each size class in a stripe
+     * @return A new pool instance
+     * @throws IllegalArgumentException If a parameter is not positive
+     */
+    static BufferPool striped(final int maxCapacity, final int maxBuffersPerClass) {
+        return new StripedBufferPool(maxCapacity, maxBuffersPerClass);
+    }
+}
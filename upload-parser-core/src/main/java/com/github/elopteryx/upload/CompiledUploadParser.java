@@ -0,0 +1,561 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload;
+
+import com.github.elopteryx.upload.internal.AsyncUploadParser;
+import com.github.elopteryx.upload.internal.BlockingUploadParser;
+import com.github.elopteryx.upload.internal.ParserSettings;
+import com.github.elopteryx.upload.internal.PartPublisher;
+import com.github.elopteryx.upload.internal.PullUploadParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+import java.util.zip.Checksum;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * An immutable parser configuration, created by {@link UploadParser#compile()}. The
+ * settings are validated once, when the instance is created. After that it can be
+ * shared between threads and used for any number of requests, each request only
+ * allocating its own parsing state.
+ *
+ * <p>The callbacks and the configured user object are shared by every request, so they
+ * must be thread safe. The servlet based methods also accept a user object for
+ * the given request only, which the callbacks can retrieve from the context.</p>
+ *
+ * <p>Unless a pool was set on the builder, the instance owns a bounded buffer pool,
+ * created by {@link BufferPool#striped()}.</p>
+ */
+public final class CompiledUploadParser {
+
+    /**
+     * The settings passed to the parsers, with the configured callbacks.
+     */
+    private final Settings settings;
+
+    /**
+     * The user object.
+     */
+    private final Object userObject;
+
+    /**
+     * The number of bytes to be allocated for the buffers.
+     */
+    private final int maxBytesUsed;
+
+    /**
+     * The number of bytes that should be buffered before calling the part begin callback.
+     */
+    private final int sizeThreshold;
+
+    /**
+     * The maximum size permitted for the parts, -1 if it is unlimited.
+     */
+    private final long maxPartSize;
+
+    /**
+     * The maximum size permitted for the complete request, -1 if it is unlimited.
+     */
+    private final long maxRequestSize;
+
+    /**
+     * Whether the malformed quoted-printable escape sequences should fail the parsing.
+     */
+    private final boolean strictQuotedPrintable;
+
+    /**
+     * The pool supplying the buffers.
+     */
+    private final BufferPool bufferPool;
+
+    /**
+     * The maximum number of buffers read ahead of the async parsing.
+     */
+    private final int readAheadBuffers;
+
+    /**
+     * Whether the parts written to a path use asynchronous file writes.
+     */
+    private final boolean asyncFileWrites;
+
+    /**
+     * The size of the buffer collecting the small writes.
+     */
+    private final int coalescingSize;
+
+    /**
+     * Whether the buffers passed to the part outputs are direct buffers.
+     */
+    private final boolean directBuffers;
+
+    /**
+     * The names of the message digests computed for each part.
+     */
+    private final List<String> digestAlgorithms;
+
+    /**
+     * The factories of the checksums computed for each part, by their names.
+     */
+    private final Map<String, Supplier<? extends Checksum>> checksums;
+
+    /**
+     * Copies the current settings of the builder.
+     * @param builder The builder holding the settings
+     * @param bufferPool The pool to use
+     */
+    CompiledUploadParser(final UploadParser builder, final BufferPool bufferPool) {
+        this.userObject = builder.userObject;
+        this.maxBytesUsed = builder.maxBytesUsed;
+        this.sizeThreshold = builder.sizeThreshold;
+        this.maxPartSize = builder.maxPartSize;
+        this.maxRequestSize = builder.maxRequestSize;
+        this.strictQuotedPrintable = builder.strictQuotedPrintable;
+        this.bufferPool = bufferPool;
+        this.readAheadBuffers = builder.readAheadBuffers;
+        this.asyncFileWrites = builder.asyncFileWrites;
+        this.coalescingSize = builder.coalescingSize;
+        this.directBuffers = builder.directBuffers;
+        this.digestAlgorithms = List.copyOf(builder.digestAlgorithms);
+        this.checksums = Collections.unmodifiableMap(new LinkedHashMap<>(builder.checksums));
+        this.settings = new Settings(builder.partHeadersCallback, builder.partBeginCallback, builder.partEndCallback, builder.requestCallback, builder.errorCallback,
+                builder.executor);
+    }
+
+    /**
+     * Performs the necessary operations to setup the async parsing. The parser will
+     * register itself to the request stream and the method will quickly return.
+     * @param request The request object
+     * @throws IOException If an error occurred with the request stream
+     * @throws ServletException If an error occurred with the servlet
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public void setupAsyncParse(final HttpServletRequest request) throws IOException, ServletException {
+        setupAsyncParse(request, userObject);
+    }
+
+    /**
+     * Same as {@link #setupAsyncParse(HttpServletRequest)}, but the given user object
+     * is used for this request, like the servlet response, instead of the configured one.
+     * @param request The request object
+     * @param userObject The user object for this request
+     * @throws IOException If an error occurred with the request stream
+     * @throws ServletException If an error occurred with the servlet
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public void setupAsyncParse(final HttpServletRequest request, final Object userObject) throws IOException, ServletException {
+        if (!UploadParser.isMultipart(request)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        final var parser = new AsyncUploadParser(settings, request);
+        parser.setUserObject(userObject);
+        parser.setupAsyncParse();
+    }
+
+    /**
+     * Same as {@link #setupAsyncParse(HttpServletRequest)}, but the returned future is completed
+     * with the context when the request has been parsed, or with the error which ended the parsing.
+     * The configured request and error callbacks are still called, before the future completes.
+     * @param request The request object
+     * @return The future of the upload context
+     * @throws IOException If an error occurred with the request stream
+     * @throws ServletException If an error occurred with the servlet
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public CompletableFuture<UploadContext> doAsyncParse(final HttpServletRequest request) throws IOException, ServletException {
+        return doAsyncParse(request, userObject);
+    }
+
+    /**
+     * Same as {@link #doAsyncParse(HttpServletRequest)}, but the given user object
+     * is used for this request, like the servlet response, instead of the configured one.
+     * @param request The request object
+     * @param userObject The user object for this request
+     * @return The future of the upload context
+     * @throws IOException If an error occurred with the request stream
+     * @throws ServletException If an error occurred with the servlet
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public CompletableFuture<UploadContext> doAsyncParse(final HttpServletRequest request, final Object userObject) throws IOException, ServletException {
+        if (!UploadParser.isMultipart(request)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        final var future = new CompletableFuture<UploadContext>();
+        final var requestCallback = settings.requestCallback;
+        final var errorCallback = settings.errorCallback;
+        final OnRequestComplete completingCallback = context -> {
+            try {
+                if (requestCallback != null) {
+                    requestCallback.onRequestComplete(context);
+                }
+            } catch (final IOException | ServletException | RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            }
+            future.complete(context);
+        };
+        final OnError failingCallback = (context, throwable) -> {
+            try {
+                if (errorCallback != null) {
+                    errorCallback.onError(context, throwable);
+                }
+            } finally {
+                future.completeExceptionally(throwable);
+            }
+        };
+        final var parser = new AsyncUploadParser(new Settings(settings.partHeadersCallback, settings.partBeginCallback, settings.partEndCallback, completingCallback, failingCallback,
+                settings.executor), request);
+        parser.setUserObject(userObject);
+        parser.setupAsyncParse();
+        return future;
+    }
+
+    /**
+     * Puts the request into async mode and parses it on a new virtual thread, in a blocking
+     * way. The method quickly returns, releasing the servlet thread, the callbacks are
+     * called from the virtual thread. Like with the async parsing, the callbacks should
+     * complete the async context when the parsing is done. If the error callback throws
+     * an exception, the parser completes it instead. Requires Java 21 or newer.
+     * @param request The request object
+     * @throws IOException If an error occurred with the request stream
+     * @throws IllegalArgumentException If the request is not a multipart request
+     * @throws UnsupportedOperationException If the runtime does not support virtual threads
+     */
+    public void setupVirtualThreadParse(final HttpServletRequest request) throws IOException {
+        setupVirtualThreadParse(request, userObject);
+    }
+
+    /**
+     * Same as {@link #setupVirtualThreadParse(HttpServletRequest)}, but the given user object
+     * is used for this request, like the servlet response, instead of the configured one.
+     * @param request The request object
+     * @param userObject The user object for this request
+     * @throws IOException If an error occurred with the request stream
+     * @throws IllegalArgumentException If the request is not a multipart request
+     * @throws UnsupportedOperationException If the runtime does not support virtual threads
+     */
+    public void setupVirtualThreadParse(final HttpServletRequest request, final Object userObject) throws IOException {
+        if (!UploadParser.isMultipart(request)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        final var parser = new BlockingUploadParser(settings, request);
+        parser.setUserObject(userObject);
+        parser.setupVirtualThreadParse();
+    }
+
+    /**
+     * The parser begins parsing the request stream. This is a blocking method,
+     * the method will not finish until the upload process finished, either
+     * successfully or not.
+     * @param request The request object
+     * @return The upload context
+     * @throws IOException If an error occurred with the IO
+     * @throws ServletException If an error occurred with the servlet stream
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public UploadContext doBlockingParse(final HttpServletRequest request) throws IOException, ServletException {
+        return doBlockingParse(request, userObject);
+    }
+
+    /**
+     * Same as {@link #doBlockingParse(HttpServletRequest)}, but the given user object
+     * is used for this request, like the servlet response, instead of the configured one.
+     * @param request The request object
+     * @param userObject The user object for this request
+     * @return The upload context
+     * @throws IOException If an error occurred with the IO
+     * @throws ServletException If an error occurred with the servlet stream
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public UploadContext doBlockingParse(final HttpServletRequest request, final Object userObject) throws IOException, ServletException {
+        if (!UploadParser.isMultipart(request)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        final var parser = new BlockingUploadParser(settings, request);
+        parser.setUserObject(userObject);
+        return parser.doBlockingParse();
+    }
+
+    /**
+     * Parses the multipart data read from the given channel. This is a blocking method,
+     * the method will not finish until the channel reached its end or an error occurred.
+     * Unlike the servlet based methods this does not need the servlet API at runtime.
+     * The {@link UploadContext#getRequest()} method will return null.
+     * @param contentType The value of the content type header, must contain the boundary
+     * @param channel The channel containing the request body
+     * @return The upload context
+     * @throws IOException If an error occurred with the IO or in the error callback
+     * @throws IllegalArgumentException If the content type is not multipart
+     */
+    public UploadContext doBlockingParse(final String contentType, final ReadableByteChannel channel) throws IOException {
+        return newBlockingParser(contentType).doBlockingParse(channel);
+    }
+
+    /**
+     * Parses the multipart data read from the given stream. This is a blocking method,
+     * the method will not finish until the stream reached its end or an error occurred.
+     * Unlike the servlet based methods this does not need the servlet API at runtime.
+     * The {@link UploadContext#getRequest()} method will return null.
+     * @param contentType The value of the content type header, must contain the boundary
+     * @param inputStream The stream containing the request body
+     * @return The upload context
+     * @throws IOException If an error occurred with the IO or in the error callback
+     * @throws IllegalArgumentException If the content type is not multipart
+     */
+    public UploadContext doBlockingParse(final String contentType, final InputStream inputStream) throws IOException {
+        return newBlockingParser(contentType).doBlockingParse(inputStream);
+    }
+
+    /**
+     * Parses the multipart data contained in the given buffers. The buffers are parsed
+     * in order, in place, without copying them. This is a blocking method,
+     * the method will not finish until every buffer is parsed or an error occurred.
+     * Unlike the servlet based methods this does not need the servlet API at runtime.
+     * The {@link UploadContext#getRequest()} method will return null.
+     * @param contentType The value of the content type header, must contain the boundary
+     * @param buffers The buffers containing the complete request body
+     * @return The upload context
+     * @throws IOException If an error occurred with the IO or in the error callback
+     * @throws IllegalArgumentException If the content type is not multipart
+     */
+    public UploadContext doBlockingParse(final String contentType, final Iterable<? extends ByteBuffer> buffers) throws IOException {
+        return newBlockingParser(contentType).doBlockingParse(buffers);
+    }
+
+    /**
+     * Returns an iterator over the parts of the request, which reads the request stream
+     * as the parts are consumed. This is a blocking method, each call of the iterator
+     * and of the part streams may block until the data is available. Only the size limits
+     * are applied, the callbacks and the output settings are not used.
+     * @param request The request object
+     * @return The iterator of the parts, which should be closed if it is not read to the end
+     * @throws IOException If an error occurred with the IO
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public PartIterator doPullParse(final HttpServletRequest request) throws IOException {
+        if (!UploadParser.isMultipart(request)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        return new PullUploadParser(settings, request).setupPullParse();
+    }
+
+    /**
+     * Same as {@link #doPullParse(HttpServletRequest)}, but the data is read from the given stream.
+     * Unlike the servlet based methods this does not need the servlet API at runtime.
+     * @param contentType The value of the content type header, must contain the boundary
+     * @param inputStream The stream containing the request body
+     * @return The iterator of the parts, which should be closed if it is not read to the end
+     * @throws IOException If an error occurred with the IO
+     * @throws IllegalArgumentException If the content type is not multipart
+     */
+    public PartIterator doPullParse(final String contentType, final InputStream inputStream) throws IOException {
+        if (!UploadParser.isMultipart(contentType)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        return new PullUploadParser(settings, contentType, inputStream).setupPullParse();
+    }
+
+    /**
+     * Sets up the async parsing, with the parts emitted by the returned publisher, instead of
+     * being passed to the callbacks. The publisher and the part bodies allow one subscriber
+     * each, the request stream is only read while their subscribers request data, so the
+     * memory used is bounded by the buffers of the parser. The configured callbacks are not used,
+     * the subscriber should complete the async context after the publisher completes or fails.
+     * The configured executor is not used either, the parsing runs on the container threads and
+     * the threads requesting data, as parking an executor thread while a subscriber has no demand
+     * could starve the executor.
+     * @param request The request object
+     * @return The publisher of the parts
+     * @throws IOException If an error occurred with the request stream
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public Flow.Publisher<PublishedPart> publishParts(final HttpServletRequest request) throws IOException {
+        if (!UploadParser.isMultipart(request)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        final var publisher = new PartPublisher();
+        new AsyncUploadParser(new Settings(null, publisher, publisher, publisher, publisher, null), request).setupAsyncParse();
+        return publisher;
+    }
+
+    private BlockingUploadParser newBlockingParser(final String contentType) {
+        if (!UploadParser.isMultipart(contentType)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        return new BlockingUploadParser(settings, contentType);
+    }
+
+    /**
+     * Returns the settings passed to the parsers.
+     * @return The settings, with the configured callbacks
+     */
+    ParserSettings settings() {
+        return settings;
+    }
+
+    /**
+     * The settings of one parsing, the callbacks can differ from the configured ones,
+     * everything else is read from the enclosing instance.
+     */
+    private final class Settings implements ParserSettings {
+
+        /**
+         * The part headers callback, called after the headers of each part are parsed.
+         */
+        private final OnPartHeaders partHeadersCallback;
+
+        /**
+         * The part begin callback, called at the beginning of each part parsing.
+         */
+        private final OnPartBegin partBeginCallback;
+
+        /**
+         * The part end callback, called at the end of each part parsing.
+         */
+        private final OnPartEnd partEndCallback;
+
+        /**
+         * The request callback, called after every part has been processed.
+         */
+        private final OnRequestComplete requestCallback;
+
+        /**
+         * The error callback, called when an error occurred.
+         */
+        private final OnError errorCallback;
+
+        /**
+         * The executor running the async parsing, null if it runs on the container threads.
+         */
+        private final Executor executor;
+
+        Settings(final OnPartHeaders partHeadersCallback, final OnPartBegin partBeginCallback, final OnPartEnd partEndCallback,
+                 final OnRequestComplete requestCallback, final OnError errorCallback, final Executor executor) {
+            this.partHeadersCallback = partHeadersCallback;
+            this.partBeginCallback = partBeginCallback;
+            this.partEndCallback = partEndCallback;
+            this.requestCallback = requestCallback;
+            this.errorCallback = errorCallback;
+            this.executor = executor;
+        }
+
+        @Override
+        public OnPartHeaders getPartHeadersCallback() {
+            return partHeadersCallback;
+        }
+
+        @Override
+        public OnPartBegin getPartBeginCallback() {
+            return partBeginCallback;
+        }
+
+        @Override
+        public OnPartEnd getPartEndCallback() {
+            return partEndCallback;
+        }
+
+        @Override
+        public OnRequestComplete getRequestCallback() {
+            return requestCallback;
+        }
+
+        @Override
+        public OnError getErrorCallback() {
+            return errorCallback;
+        }
+
+        @Override
+        public Object getUserObject() {
+            return userObject;
+        }
+
+        @Override
+        public int getMaxBytesUsed() {
+            return maxBytesUsed;
+        }
+
+        @Override
+        public int getSizeThreshold() {
+            return sizeThreshold;
+        }
+
+        @Override
+        public long getMaxPartSize() {
+            return maxPartSize;
+        }
+
+        @Override
+        public long getMaxRequestSize() {
+            return maxRequestSize;
+        }
+
+        @Override
+        public boolean isStrictQuotedPrintable() {
+            return strictQuotedPrintable;
+        }
+
+        @Override
+        public BufferPool getBufferPool() {
+            return bufferPool;
+        }
+
+        @Override
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        @Override
+        public int getReadAheadBuffers() {
+            return readAheadBuffers;
+        }
+
+        @Override
+        public boolean isAsyncFileWrites() {
+            return asyncFileWrites;
+        }
+
+        @Override
+        public int getCoalescingSize() {
+            return coalescingSize;
+        }
+
+        @Override
+        public boolean isDirectBuffers() {
+            return directBuffers;
+        }
+
+        @Override
+        public List<String> getDigestAlgorithms() {
+            return digestAlgorithms;
+        }
+
+        @Override
+        public Map<String, Supplier<? extends Checksum>> getChecksums() {
+            return checksums;
+        }
+    }
+}
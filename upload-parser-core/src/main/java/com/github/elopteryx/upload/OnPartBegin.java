@@ -29,10 +29,13 @@ public interface OnPartBegin {
     /**
      * The function to implement. When it's called depends on the size threshold. If enough bytes
      * have been read or if the part is fully uploaded then this method is called
-     * with a buffer containing the read bytes. Note that the buffer is only passed
-     * for validation, it should not be written out. The buffered and the upcoming
-     * bytes will be written out to the output object returned by this method. If the callback
-     * is not set then the uploaded bytes are discarded.
+     * with a read-only buffer containing the read bytes. If the first chunk of the part
+     * already reaches the threshold then the buffer is a view of the parser's own data,
+     * which is only valid during the call, otherwise it holds a copy of the first bytes.
+     * Note that the buffer is only passed for validation, it should not be written out.
+     * The buffered and the upcoming bytes will be written out to the output object returned
+     * by this method. If the callback is not set then the uploaded bytes are discarded.
+     * It is not called for the parts whose output was returned by the {@link OnPartHeaders} callback.
      * @param context The upload context
      * @param buffer The byte buffer containing the first bytes of the part
      * @return A non-null output object (a channel or stream) to write out the part
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload;
+
+import java.io.IOException;
+
+/**
+ * A functional interface. An implementation of it can be passed in the
+ * {@link UploadParser#onPartHeaders(OnPartHeaders)} method to call it when the headers of each part are parsed.
+ */
+@FunctionalInterface
+public interface OnPartHeaders {
+
+    /**
+     * The function to implement. It is called as soon as the headers of the part are parsed,
+     * before any byte of the part body is read, so the output can be chosen by the name
+     * or the content type of the part without buffering. If an output is returned then
+     * the body is written to it directly and the part begin callback is not called for this part,
+     * {@link PartOutput#skip()} makes the parser skip the body. To reject the request an exception
+     * can be thrown, which ends the parsing and is passed to the error callback.
+     * @param context The upload context, holding the current part
+     * @return The output object to write out the part, or null to call the part begin callback as usual
+     * @throws IOException If an error occurred with the channel
+     */
+    PartOutput onPartHeaders(UploadContext context) throws IOException;
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Iterates over the parts of a multipart request, created by
+ * {@link UploadParser#doPullParse(String, java.io.InputStream)}. Unlike the callback based
+ * parsing, the request is only read as the parts are consumed. Calling {@link #hasNext()}
+ * skips the unread data of the current part, without buffering it.
+ *
+ * <p>The iterator is not thread safe. It releases its buffers when the last part
+ * has been returned, or when it is closed.</p>
+ */
+public interface PartIterator extends Closeable {
+
+    /**
+     * Returns whether the request has another part, reading the request until
+     * the headers of the next part, or its end.
+     * @return True if there is another part
+     * @throws IOException If an error occurred with the I/O or the request is malformed
+     */
+    boolean hasNext() throws IOException;
+
+    /**
+     * Returns the next part, its body can be read until the next call of this method.
+     * @return The next part
+     * @throws IOException If an error occurred with the I/O or the request is malformed
+     * @throws java.util.NoSuchElementException If there are no more parts
+     */
+    ReadablePart next() throws IOException;
+
+    /**
+     * Stops the parsing and releases the buffers. The request stream is not closed.
+     */
+    @Override
+    void close();
+}
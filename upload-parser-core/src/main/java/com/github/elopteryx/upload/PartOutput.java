@@ -26,6 +26,11 @@ import java.nio.file.Path;
  */
 public class PartOutput {
 
+    /**
+     * The shared instance returned by {@link #skip()}.
+     */
+    private static final PartOutput SKIP = new PartOutput(null);
+
     /**
      * The value object.
      */
@@ -64,6 +69,14 @@ public class PartOutput {
         return clazz.cast(value);
     }
 
+    /**
+     * Returns whether the part should be skipped, see {@link #skip()}.
+     * @return Whether this is the skipping instance
+     */
+    public boolean isSkipped() {
+        return this == SKIP;
+    }
+
     /**
      * Creates a new instance from the given channel object. The parser will
      * use the channel to write out the bytes and will attempt to close it.
@@ -85,6 +98,17 @@ public class PartOutput {
         return new PartOutput(outputStream);
     }
 
+    /**
+     * Creates a new instance from the given asynchronous channel. The parser will
+     * use the channel to write out the bytes, without reading more data while
+     * a write is in progress and will attempt to close it.
+     * @param asyncChannel A channel which can be used for asynchronous writing
+     * @return A new PartOutput instance
+     */
+    public static PartOutput from(final AsyncWritableChannel asyncChannel) {
+        return new PartOutput(asyncChannel);
+    }
+
     /**
      * Creates a new instance from the given path object. The parser will
      * create a channel from the path to write out the bytes and
@@ -97,4 +121,15 @@ public class PartOutput {
     public static PartOutput from(final Path path) {
         return new PartOutput(path);
     }
+
+    /**
+     * Returns the instance which makes the parser skip the rest of the part.
+     * The parser only looks for the next boundary, the data is not decoded
+     * and it is not written anywhere. The size limit of the part does not apply
+     * to the skipped data, the digests of the part are not computed.
+     * @return The skipping instance
+     */
+    public static PartOutput skip() {
+        return SKIP;
+    }
 }
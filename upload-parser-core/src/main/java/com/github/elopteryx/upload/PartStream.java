@@ -112,4 +112,28 @@ public interface PartStream {
      */
     Collection<String> getHeaderNames();
 
+    /**
+     * Returns the message digest of the part data, computed with the given algorithm,
+     * which must have been added with {@link UploadParser#digest(String)}. The value
+     * is set when the part ends, before the part end callback is called.
+     *
+     * @param algorithm The name of the algorithm
+     * @return The digest or null if it was not computed
+     */
+    default byte[] getDigest(String algorithm) {
+        return null;
+    }
+
+    /**
+     * Returns the value of the checksum with the given name, which must have been added
+     * with {@link UploadParser#checksum(String, java.util.function.Supplier)}. The value
+     * is set when the part ends, before the part end callback is called.
+     *
+     * @param name The name of the checksum
+     * @return The value of the checksum or -1 if it was not computed
+     */
+    default long getChecksum(String name) {
+        return -1;
+    }
+
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+/**
+ * A part emitted by the publisher returned from {@link UploadParser#publishParts(jakarta.servlet.http.HttpServletRequest)}.
+ * Its body is a publisher as well, the request is only read as the body is requested.
+ */
+public interface PublishedPart extends PartStream {
+
+    /**
+     * Returns the publisher of the part body. It accepts a single subscriber, which receives
+     * the decoded data in buffers it can keep. The parsing does not continue until the body
+     * is subscribed and its data is requested, or the subscription is cancelled,
+     * which discards the rest of the part.
+     * @return The publisher of the body
+     */
+    Flow.Publisher<ByteBuffer> getBody();
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload;
+
+import com.github.elopteryx.upload.util.InputStreamBackedChannel;
+
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A part returned by a {@link PartIterator}, which gives access to its body.
+ * The body is decoded from the request as it is read, with bounded memory.
+ */
+public interface ReadablePart extends PartStream {
+
+    /**
+     * Returns the stream of the part body. It can only be read until the iterator moves to
+     * the next part, after that it is at its end. Closing the stream has no effect on the request.
+     * @return The stream of the body
+     */
+    InputStream getInputStream();
+
+    /**
+     * Returns the body of the part as a channel, with the same rules as {@link #getInputStream()}.
+     * @return The channel of the body
+     */
+    default ReadableByteChannel getChannel() {
+        return new InputStreamBackedChannel(getInputStream());
+    }
+}
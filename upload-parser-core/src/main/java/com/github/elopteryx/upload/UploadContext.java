@@ -31,7 +31,8 @@ public interface UploadContext {
      * allowing customization during the stages of the
      * asynchronous processing.
      *
-     * @return The request object
+     * @return The request object, or null if the parsed data
+     *     did not come from a servlet request
      */
     HttpServletRequest getRequest();
 
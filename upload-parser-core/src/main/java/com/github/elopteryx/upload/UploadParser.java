@@ -16,14 +16,28 @@
 
 package com.github.elopteryx.upload;
 
+import static java.util.Objects.requireNonNull;
+
+import com.github.elopteryx.upload.errors.MultipartException;
 import com.github.elopteryx.upload.errors.PartSizeException;
 import com.github.elopteryx.upload.errors.RequestSizeException;
-import com.github.elopteryx.upload.internal.AbstractUploadParser;
-import com.github.elopteryx.upload.internal.AsyncUploadParser;
-import com.github.elopteryx.upload.internal.BlockingUploadParser;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+import java.util.zip.Checksum;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 
@@ -38,6 +52,13 @@ import jakarta.servlet.http.HttpServletRequest;
  * configuration can be kept in one place and the parser can be passed around and modified
  * freely. The servlet request object is not necessary before the actual parsing starts. In fact
  * the configured parser can be reused for each http request.</p>
+ *
+ * <p>Multipart data which does not come from a servlet request, like spooled files or
+ * socket channels, can be parsed with the blocking methods accepting a content type
+ * and a channel, a stream or a sequence of buffers.</p>
+ *
+ * <p>On hot endpoints the configuration can be compiled once with {@link #compile()},
+ * the resulting immutable parser can be shared and used directly for each request.</p>
  */
 public final class UploadParser {
 
@@ -46,60 +67,129 @@ public final class UploadParser {
      */
     private static final int DEFAULT_USED_MEMORY = 4096;
 
+    /**
+     * The default number of buffers read ahead of the async parsing.
+     */
+    private static final int DEFAULT_READ_AHEAD_BUFFERS = 4;
+
     /**
      * Part of HTTP content type header.
      */
     private static final String MULTIPART = "multipart/";
 
+    /**
+     * The part headers callback, called after the headers of each part are parsed.
+     */
+    OnPartHeaders partHeadersCallback;
+
     /**
      * The part begin callback, called at the beginning of each part parsing.
      */
-    private OnPartBegin partBeginCallback;
+    OnPartBegin partBeginCallback;
 
     /**
      * The part end callback, called at the end of each part parsing.
      */
-    private OnPartEnd partEndCallback;
+    OnPartEnd partEndCallback;
 
     /**
      * The request callback, called after every part has been processed.
      */
-    private OnRequestComplete requestCallback;
+    OnRequestComplete requestCallback;
 
     /**
      * The error callback, called when an error occurred.
      */
-    private OnError errorCallback;
+    OnError errorCallback;
 
     /**
      * The user object.
      */
-    private Object userObject;
+    Object userObject;
 
     /**
      * The number of bytes to be allocated for the buffers.
      */
-    private int maxBytesUsed = DEFAULT_USED_MEMORY;
+    int maxBytesUsed = DEFAULT_USED_MEMORY;
 
     /**
      * The number of bytes that should be buffered before calling the part begin callback.
      */
-    private int sizeThreshold;
+    int sizeThreshold;
 
     /**
      * The maximum size permitted for the parts. By default it is unlimited.
      */
-    private long maxPartSize = -1;
+    long maxPartSize = -1;
 
     /**
      * The maximum size permitted for the complete request. By default it is unlimited.
      */
-    private long maxRequestSize = -1;
+    long maxRequestSize = -1;
+
+    /**
+     * Whether the malformed quoted-printable escape sequences should fail the parsing.
+     */
+    boolean strictQuotedPrintable;
+
+    /**
+     * The pool supplying the buffers. If it is not set then there is no pooling,
+     * unless the parser is compiled, which creates its own pool.
+     */
+    BufferPool bufferPool;
+
+    /**
+     * The executor running the async parsing, null if it runs on the container threads.
+     */
+    Executor executor;
+
+    /**
+     * The maximum number of buffers read ahead of the async parsing, when it uses an executor.
+     */
+    int readAheadBuffers = DEFAULT_READ_AHEAD_BUFFERS;
+
+    /**
+     * Whether the parts written to a path use asynchronous file writes.
+     */
+    boolean asyncFileWrites;
+
+    /**
+     * The size of the buffer collecting the small writes, zero if they are not collected.
+     */
+    int coalescingSize;
+
+    /**
+     * Whether the buffers passed to the part outputs are direct buffers.
+     */
+    boolean directBuffers;
+
+    /**
+     * The names of the message digests computed for each part.
+     */
+    final List<String> digestAlgorithms = new ArrayList<>();
+
+    /**
+     * The factories of the checksums computed for each part, by their names.
+     */
+    final Map<String, Supplier<? extends Checksum>> checksums = new LinkedHashMap<>();
 
     private UploadParser() {
         // No need to allow public access
     }
 
+    /**
+     * Sets a callback for each part, called when its headers are parsed, before the body.
+     * It can choose the output of the part, skip it or reject the request.
+     * If you wish to skip the method invoke, pass a null
+     * parameter or do not call this method.
+     * @param partHeadersCallback An object or lambda expression
+     * @return The parser will return itself
+     */
+    public UploadParser onPartHeaders(final OnPartHeaders partHeadersCallback) {
+        this.partHeadersCallback = partHeadersCallback;
+        return this;
+    }
+
     /**
      * Sets a callback for each part, called at the beginning.
      * If you wish to skip the method invoke, pass a null
@@ -230,6 +320,164 @@ public final class UploadParser {
         return this;
     }
 
+    /**
+     * Sets how the malformed escape sequences are handled in the parts
+     * using the quoted-printable transfer encoding. By default they are
+     * passed through as they are, in strict mode they result in a
+     * {@link MultipartException} exception.
+     * @param strictQuotedPrintable Whether the decoding should be strict
+     * @return The parser will return itself
+     */
+    public UploadParser strictQuotedPrintable(final boolean strictQuotedPrintable) {
+        this.strictQuotedPrintable = strictQuotedPrintable;
+        return this;
+    }
+
+    /**
+     * Sets the pool which supplies the buffers of the parser. Sharing a
+     * pool between the requests, for example one created by
+     * {@link BufferPool#striped()}, reduces the allocations, as the buffers
+     * are released when the parsing ends.
+     * @param bufferPool The pool to use
+     * @return The parser will return itself
+     */
+    public UploadParser bufferPool(final BufferPool bufferPool) {
+        this.bufferPool = requireNonNull(bufferPool);
+        return this;
+    }
+
+    /**
+     * Sets the executor which runs the async parsing, including the part callbacks and
+     * the writes to the part outputs. This way a slow output does not block the
+     * I/O thread of the servlet container. The container threads only read the request
+     * into buffers, which are then parsed on the executor, in order, one at a time for each request.
+     * Reading stops when the buffers are all waiting to be parsed, see
+     * {@link #executor(Executor, int)}. The blocking parsing is not affected.
+     * @param executor The executor to use
+     * @return The parser will return itself
+     */
+    public UploadParser executor(final Executor executor) {
+        return executor(executor, DEFAULT_READ_AHEAD_BUFFERS);
+    }
+
+    /**
+     * Same as {@link #executor(Executor)}, but also sets how many buffers can be read ahead
+     * of the parsing for each request. Each buffer uses half of the amount set with
+     * {@link #maxBytesUsed(int)}. When the limit is reached the parser stops reading the
+     * request stream until a buffer is parsed.
+     * @param executor The executor to use
+     * @param readAheadBuffers The maximum number of buffers, at least one
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the number of buffers is not positive
+     */
+    public UploadParser executor(final Executor executor, final int readAheadBuffers) {
+        if (readAheadBuffers < 1) {
+            throw new IllegalArgumentException("Invalid parameter value: " + readAheadBuffers);
+        }
+        this.executor = requireNonNull(executor);
+        this.readAheadBuffers = readAheadBuffers;
+        return this;
+    }
+
+    /**
+     * Sets whether the parts written to a {@link java.nio.file.Path} should use an
+     * {@link java.nio.channels.AsynchronousFileChannel}. The data is copied into a few
+     * pooled buffers and written without waiting, so the reading of the request overlaps
+     * with the disk writes. The part end callback is called after every write
+     * has completed. Disabled by default.
+     * @param asyncFileWrites Whether to use asynchronous file writes
+     * @return The parser will return itself
+     */
+    public UploadParser asyncFileWrites(final boolean asyncFileWrites) {
+        this.asyncFileWrites = asyncFileWrites;
+        return this;
+    }
+
+    /**
+     * Sets the size of the buffer which collects the small writes to the part outputs.
+     * The parser can pass a few bytes at a time to the output, for example around the
+     * boundaries, which is costly for file or stream outputs. The collected data is
+     * passed on when the buffer is full and when the part ends. Channels supporting
+     * gathering writes receive the buffered and the new data in one call. Has no effect
+     * on the asynchronous outputs, which are already buffered. Disabled by default.
+     * @param coalescingSize The size of the buffer, zero to disable
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the parameter is negative
+     */
+    public UploadParser coalesceWrites(final int coalescingSize) {
+        if (coalescingSize < 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + coalescingSize);
+        }
+        this.coalescingSize = coalescingSize;
+        return this;
+    }
+
+    /**
+     * Sets whether the buffers holding the data passed to the part outputs, that is the
+     * buffers collecting the writes for the asynchronous outputs and for the coalescing,
+     * should be direct buffers. Channels backed by the operating system, like file or
+     * socket channels, copy heap buffers into a temporary direct buffer on every write.
+     * The outputs must not call {@link ByteBuffer#array()} on the buffers if this is enabled.
+     * The buffers parsed and passed to the part begin callback are always heap buffers.
+     * Disabled by default.
+     * @param directBuffers Whether to use direct buffers for the part outputs
+     * @return The parser will return itself
+     */
+    public UploadParser directBuffers(final boolean directBuffers) {
+        this.directBuffers = directBuffers;
+        return this;
+    }
+
+    /**
+     * Adds a message digest, which is computed over the data of each part while it is
+     * written to the output, including the bytes buffered for the part begin callback.
+     * This way the output does not have to be read again. The result is available with
+     * {@link PartStream#getDigest(String)} in the part end callback.
+     * @param algorithm The name of the algorithm, for example "SHA-256" or "MD5"
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the algorithm is not supported
+     */
+    public UploadParser digest(final String algorithm) {
+        try {
+            MessageDigest.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, e);
+        }
+        if (!digestAlgorithms.contains(algorithm)) {
+            digestAlgorithms.add(algorithm);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a checksum, for example {@link java.util.zip.CRC32C}, which is computed in the same way
+     * as the digests set with {@link #digest(String)}. The result is available with
+     * {@link PartStream#getChecksum(String)} in the part end callback.
+     * @param name The name of the checksum, used to retrieve the result
+     * @param factory The factory creating the checksum instances
+     * @return The parser will return itself
+     */
+    public UploadParser checksum(final String name, final Supplier<? extends Checksum> factory) {
+        checksums.put(requireNonNull(name), requireNonNull(factory));
+        return this;
+    }
+
+    /**
+     * Creates an immutable copy of the current configuration, which can be shared
+     * between threads and reused for any number of requests, without setting up
+     * the parser again. Unless a pool was set, the compiled parser creates its
+     * own buffer pool, with {@link BufferPool#striped()}.
+     * @return The compiled parser
+     * @throws IllegalStateException If the configured limits contradict each other
+     */
+    public CompiledUploadParser compile() {
+        if (maxPartSize > -1 && maxRequestSize > -1 && maxPartSize > maxRequestSize) {
+            throw new IllegalStateException("The maximum part size (" + maxPartSize
+                    + ") is greater than the maximum request size (" + maxRequestSize + ")!");
+        }
+        return new CompiledUploadParser(this, bufferPool == null ? BufferPool.striped() : bufferPool);
+    }
+
     /**
      * Performs the necessary operations to setup the async parsing. The parser will
      * register itself to the request stream and the method will quickly return.
@@ -239,12 +487,35 @@ public final class UploadParser {
      * @throws IllegalArgumentException If the request is not a multipart request
      */
     public void setupAsyncParse(final HttpServletRequest request) throws IOException, ServletException {
-        if (!isMultipart(request)) {
-            throw new IllegalArgumentException("Not a multipart request!");
-        }
-        final var parser = new AsyncUploadParser(request);
-        build(parser);
-        parser.setupAsyncParse();
+        build().setupAsyncParse(request);
+    }
+
+    /**
+     * Same as {@link #setupAsyncParse(HttpServletRequest)}, but the returned future is completed
+     * with the context when the request has been parsed, or with the error which ended the parsing.
+     * The configured request and error callbacks are still called, before the future completes.
+     * @param request The request object
+     * @return The future of the upload context
+     * @throws IOException If an error occurred with the request stream
+     * @throws ServletException If an error occurred with the servlet
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public CompletableFuture<UploadContext> doAsyncParse(final HttpServletRequest request) throws IOException, ServletException {
+        return build().doAsyncParse(request);
+    }
+
+    /**
+     * Puts the request into async mode and parses it on a new virtual thread, in a blocking
+     * way. The method quickly returns, releasing the servlet thread, the callbacks are
+     * called from the virtual thread. Like with the async parsing, the callbacks should
+     * complete the async context when the parsing is done. Requires Java 21 or newer.
+     * @param request The request object
+     * @throws IOException If an error occurred with the request stream
+     * @throws IllegalArgumentException If the request is not a multipart request
+     * @throws UnsupportedOperationException If the runtime does not support virtual threads
+     */
+    public void setupVirtualThreadParse(final HttpServletRequest request) throws IOException {
+        build().setupVirtualThreadParse(request);
     }
 
     /**
@@ -258,29 +529,107 @@ public final class UploadParser {
      * @throws IllegalArgumentException If the request is not a multipart request
      */
     public UploadContext doBlockingParse(final HttpServletRequest request) throws IOException, ServletException {
-        if (!isMultipart(request)) {
-            throw new IllegalArgumentException("Not a multipart request!");
-        }
-        final var parser = new BlockingUploadParser(request);
-        build(parser);
-        return parser.doBlockingParse();
+        return build().doBlockingParse(request);
+    }
+
+    /**
+     * Parses the multipart data read from the given channel. This is a blocking method,
+     * the method will not finish until the channel reached its end or an error occurred.
+     * Unlike the servlet based methods this does not need the servlet API at runtime.
+     * The {@link UploadContext#getRequest()} method will return null.
+     * @param contentType The value of the content type header, must contain the boundary
+     * @param channel The channel containing the request body
+     * @return The upload context
+     * @throws IOException If an error occurred with the IO or in the error callback
+     * @throws IllegalArgumentException If the content type is not multipart
+     */
+    public UploadContext doBlockingParse(final String contentType, final ReadableByteChannel channel) throws IOException {
+        return build().doBlockingParse(contentType, channel);
+    }
+
+    /**
+     * Parses the multipart data read from the given stream. This is a blocking method,
+     * the method will not finish until the stream reached its end or an error occurred.
+     * Unlike the servlet based methods this does not need the servlet API at runtime.
+     * The {@link UploadContext#getRequest()} method will return null.
+     * @param contentType The value of the content type header, must contain the boundary
+     * @param inputStream The stream containing the request body
+     * @return The upload context
+     * @throws IOException If an error occurred with the IO or in the error callback
+     * @throws IllegalArgumentException If the content type is not multipart
+     */
+    public UploadContext doBlockingParse(final String contentType, final InputStream inputStream) throws IOException {
+        return build().doBlockingParse(contentType, inputStream);
+    }
+
+    /**
+     * Parses the multipart data contained in the given buffers. The buffers are parsed
+     * in order, in place, without copying them. This is a blocking method,
+     * the method will not finish until every buffer is parsed or an error occurred.
+     * Unlike the servlet based methods this does not need the servlet API at runtime.
+     * The {@link UploadContext#getRequest()} method will return null.
+     * @param contentType The value of the content type header, must contain the boundary
+     * @param buffers The buffers containing the complete request body
+     * @return The upload context
+     * @throws IOException If an error occurred with the IO or in the error callback
+     * @throws IllegalArgumentException If the content type is not multipart
+     */
+    public UploadContext doBlockingParse(final String contentType, final Iterable<? extends ByteBuffer> buffers) throws IOException {
+        return build().doBlockingParse(contentType, buffers);
+    }
+
+    /**
+     * Returns an iterator over the parts of the request, which reads the request stream
+     * as the parts are consumed. This is a blocking method, each call of the iterator
+     * and of the part streams may block until the data is available. Only the size limits
+     * are applied, the callbacks and the output settings are not used.
+     * @param request The request object
+     * @return The iterator of the parts, which should be closed if it is not read to the end
+     * @throws IOException If an error occurred with the IO
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public PartIterator doPullParse(final HttpServletRequest request) throws IOException {
+        return build().doPullParse(request);
+    }
+
+    /**
+     * Same as {@link #doPullParse(HttpServletRequest)}, but the data is read from the given stream.
+     * Unlike the servlet based methods this does not need the servlet API at runtime.
+     * @param contentType The value of the content type header, must contain the boundary
+     * @param inputStream The stream containing the request body
+     * @return The iterator of the parts, which should be closed if it is not read to the end
+     * @throws IOException If an error occurred with the IO
+     * @throws IllegalArgumentException If the content type is not multipart
+     */
+    public PartIterator doPullParse(final String contentType, final InputStream inputStream) throws IOException {
+        return build().doPullParse(contentType, inputStream);
+    }
+
+    /**
+     * Sets up the async parsing, with the parts emitted by the returned publisher, instead of
+     * being passed to the callbacks. The publisher and the part bodies allow one subscriber
+     * each, the request stream is only read while their subscribers request data, so the
+     * memory used is bounded by the buffers of the parser. The configured callbacks are not used,
+     * the subscriber should complete the async context after the publisher completes or fails.
+     * The configured executor is not used either, the parsing runs on the container threads and
+     * the threads requesting data, as parking an executor thread while a subscriber has no demand
+     * could starve the executor.
+     * @param request The request object
+     * @return The publisher of the parts
+     * @throws IOException If an error occurred with the request stream
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public Flow.Publisher<PublishedPart> publishParts(final HttpServletRequest request) throws IOException {
+        return build().publishParts(request);
     }
 
     /**
      * Passes the configuration parameters to the actual
-     * parser implementation.
-     * @param parser The parser implementation
+     * parser implementation, without pooling by default.
+     * @return The configuration for one request
      */
-    private void build(final AbstractUploadParser parser) {
-        parser.setPartBeginCallback(partBeginCallback);
-        parser.setPartEndCallback(partEndCallback);
-        parser.setRequestCallback(requestCallback);
-        parser.setErrorCallback(errorCallback);
-        parser.setUserObject(userObject);
-        parser.setMaxBytesUsed(maxBytesUsed);
-        parser.setSizeThreshold(sizeThreshold);
-        parser.setMaxPartSize(maxPartSize);
-        parser.setMaxRequestSize(maxRequestSize);
+    private CompiledUploadParser build() {
+        return new CompiledUploadParser(this, bufferPool == null ? BufferPool.unpooled() : bufferPool);
     }
 
     /**
@@ -290,7 +639,17 @@ public final class UploadParser {
      * @return Whether the request is a proper multipart request
      */
     public static boolean isMultipart(final HttpServletRequest request) {
-        return request.getContentType() != null && request.getContentType().toLowerCase(Locale.ENGLISH).startsWith(MULTIPART);
+        return isMultipart(request.getContentType());
+    }
+
+    /**
+     * Utility method which can be used to check whether the content type
+     * belongs to a request which should be processed by this parser or not.
+     * @param contentType The value of the content type header
+     * @return Whether the content type is a proper multipart content type
+     */
+    public static boolean isMultipart(final String contentType) {
+        return contentType != null && contentType.toLowerCase(Locale.ENGLISH).startsWith(MULTIPART);
     }
 
     /**
@@ -22,10 +22,8 @@ import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.Objects.requireNonNull;
 
-import com.github.elopteryx.upload.OnError;
-import com.github.elopteryx.upload.OnPartBegin;
-import com.github.elopteryx.upload.OnPartEnd;
-import com.github.elopteryx.upload.OnRequestComplete;
+import com.github.elopteryx.upload.AsyncWritableChannel;
+import com.github.elopteryx.upload.BufferPool;
 import com.github.elopteryx.upload.PartOutput;
 import com.github.elopteryx.upload.errors.PartSizeException;
 import com.github.elopteryx.upload.errors.RequestSizeException;
@@ -39,55 +37,47 @@ import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.function.Consumer;
 import jakarta.servlet.http.HttpServletRequest;
 
 /**
  * Base class for the parser implementations. This holds the common methods, like the more specific
  * validation and the calling of the user-supplied functions.
  */
-public abstract sealed class AbstractUploadParser implements MultipartParser.PartHandler permits AsyncUploadParser, BlockingUploadParser {
+public abstract sealed class AbstractUploadParser implements MultipartParser.PartHandler permits AsyncUploadParser, BlockingUploadParser, PullUploadParser {
 
     /**
-     * The default size allocated for the buffers.
+     * The shared configuration of the parser.
      */
-    private static final int DEFAULT_USED_MEMORY = 4096;
+    protected final ParserSettings settings;
     /**
-     * The part begin callback, called at the beginning of each part parsing.
-     */
-    private OnPartBegin partBeginCallback;
-    /**
-     * The part end callback, called at the end of each part parsing.
-     */
-    private OnPartEnd partEndCallback;
-    /**
-     * The request callback, called after every part has been processed.
-     */
-    OnRequestComplete requestCallback;
-    /**
-     * The error callback, called when an error occurred.
-     */
-    OnError errorCallback;
-    /**
-     * The user object.
+     * The user object, by default the one in the configuration.
      */
     private Object userObject;
     /**
-     * The number of bytes to be allocated for the buffers.
+     * The number of bytes allocated for each buffer, half of the configured amount.
      */
-    protected int maxBytesUsed = DEFAULT_USED_MEMORY;
+    private final int bufferSize;
     /**
      * The number of bytes that should be buffered before calling the part begin callback.
      */
-    protected int sizeThreshold;
+    private final int sizeThreshold;
     /**
-     * The maximum size permitted for the parts. By default it is unlimited.
+     * The pool supplying the buffers.
      */
-    private long maxPartSize = -1;
+    private final BufferPool bufferPool;
     /**
-     * The maximum size permitted for the complete request. By default it is unlimited.
+     * Guards the acquired buffers. With an executor the container thread acquires the
+     * read-ahead buffers while the executor thread can acquire the output buffers.
      */
-    protected long maxRequestSize = -1;
+    private final Object pooledLock = new Object();
+    /**
+     * The buffers acquired from the pool, to be released when the parsing ends.
+     */
+    private ByteBuffer[] pooledBuffers = new ByteBuffer[3];
+    private int pooledCount;
     /**
      * The valid mime type.
      */
@@ -100,6 +90,31 @@ public abstract sealed class AbstractUploadParser implements MultipartParser.Par
      * The channel to where the current part is written.
      */
     private WritableByteChannel writableChannel;
+    /**
+     * The buffer collecting the small writes, created when it is first needed.
+     */
+    private ByteBuffer coalescingBuffer;
+    /**
+     * The digests computed over the part data, null if none are configured.
+     */
+    private final PartDigests digests;
+    /**
+     * The asynchronous channel of the current part, if its writes are collected
+     * instead of waiting for them. In that case there is no writable channel.
+     */
+    private AsyncWritableChannel asyncChannel;
+    /**
+     * The data collected for the asynchronous channel, created when it is first needed.
+     */
+    private PendingWrites pendingWrites;
+    /**
+     * Whether the end of the current part is deferred until its data has been written.
+     */
+    private boolean partEndDeferred;
+    /**
+     * Whether the rest of the current part is skipped by the multipart parser.
+     */
+    private boolean skipping;
     /**
      * The known size of the request.
      */
@@ -118,6 +133,20 @@ public abstract sealed class AbstractUploadParser implements MultipartParser.Par
      */
     protected ByteBuffer dataBuffer;
 
+    /**
+     * Creates the parser for one request.
+     * @param settings The shared configuration
+     */
+    protected AbstractUploadParser(final ParserSettings settings) {
+        this.settings = requireNonNull(settings);
+        this.userObject = settings.getUserObject();
+        // There are two byte buffers so each one gets half of the amount
+        this.bufferSize = settings.getMaxBytesUsed() / 2;
+        this.sizeThreshold = settings.getSizeThreshold();
+        this.bufferPool = settings.getBufferPool();
+        this.digests = PartDigests.create(settings);
+    }
+
     /**
      * Sets up the necessary objects to start the parsing. Depending upon
      * the environment the concrete implementations can be very different.
@@ -125,20 +154,39 @@ public abstract sealed class AbstractUploadParser implements MultipartParser.Par
      * @throws RequestSizeException If the supplied size is invalid
      */
     void init(final HttpServletRequest request) {
+        init(request, request.getHeader(Headers.CONTENT_TYPE), request.getCharacterEncoding(), request.getContentLengthLong());
+    }
+
+    /**
+     * Sets up the necessary objects to start the parsing, without
+     * a servlet request. The charset is taken from the content type, if present.
+     * @param contentType The value of the content type header
+     */
+    void init(final String contentType) {
+        init(null, contentType, Headers.extractCharsetFromHeader(contentType), -1);
+    }
+
+    /**
+     * Sets up the necessary objects to start the parsing.
+     * @param request The servlet request, can be null
+     * @param mimeType The value of the content type header
+     * @param encodingHeader The character encoding of the request, can be null
+     * @param contentLength The size of the request or -1 if it is not known
+     * @throws RequestSizeException If the supplied size is invalid
+     */
+    private void init(final HttpServletRequest request, final String mimeType, final String encodingHeader, final long contentLength) {
 
         // Fail fast mode
+        final var maxRequestSize = settings.getMaxRequestSize();
         if (maxRequestSize > -1) {
-            final var requestSize = request.getContentLengthLong();
-            if (requestSize > maxRequestSize) {
-                throw new RequestSizeException("The size of the request (" + requestSize
-                        + ") is greater than the allowed size (" + maxRequestSize + ")!", requestSize, maxRequestSize);
+            if (contentLength > maxRequestSize) {
+                throw new RequestSizeException("The size of the request (" + contentLength
+                        + ") is greater than the allowed size (" + maxRequestSize + ")!", contentLength, maxRequestSize);
             }
         }
 
-        checkBuffer = ByteBuffer.allocate(sizeThreshold);
         context = new UploadContextImpl(request, userObject);
 
-        final var mimeType = request.getHeader(Headers.CONTENT_TYPE);
         if (mimeType != null && mimeType.startsWith(MULTIPART_FORM_DATA)) {
             final String boundary = Headers.extractBoundaryFromHeader(mimeType);
             if (boundary == null) {
@@ -146,9 +194,52 @@ public abstract sealed class AbstractUploadParser implements MultipartParser.Par
                         + mimeType
                         + ", multipart data will not be available");
             }
-            final var encodingHeader = request.getCharacterEncoding();
             final var charset = encodingHeader == null ? ISO_8859_1 : Charset.forName(encodingHeader);
-            parseState = MultipartParser.beginParse(this, boundary.getBytes(charset), maxBytesUsed, charset);
+            parseState = MultipartParser.beginParse(this, boundary.getBytes(charset), bufferSize, charset);
+            parseState.setStrictQuotedPrintable(settings.isStrictQuotedPrintable());
+            parseState.setEncodingBuffer(acquire(bufferSize));
+        }
+        checkBuffer = acquire(sizeThreshold);
+        dataBuffer = acquire(bufferSize);
+    }
+
+    /**
+     * Acquires a heap buffer from the pool, which will be released by {@link #releaseBuffers()}.
+     * @param size The required size
+     * @return A buffer with the exact size
+     */
+    ByteBuffer acquire(final int size) {
+        return acquire(size, false);
+    }
+
+    /**
+     * Acquires a buffer from the pool, which will be released by {@link #releaseBuffers()}.
+     * @param size The required size
+     * @param direct Whether a direct buffer is required
+     * @return A buffer with the exact size
+     */
+    private ByteBuffer acquire(final int size, final boolean direct) {
+        final var buffer = bufferPool.acquire(size, direct);
+        synchronized (pooledLock) {
+            if (pooledCount == pooledBuffers.length) {
+                pooledBuffers = Arrays.copyOf(pooledBuffers, pooledCount * 2);
+            }
+            pooledBuffers[pooledCount++] = buffer;
+        }
+        return buffer.slice(0, size);
+    }
+
+    /**
+     * Returns the buffers to the pool. Must be called when the parsing ends, whether it
+     * was successful or not. Calling it again has no effect.
+     */
+    void releaseBuffers() {
+        synchronized (pooledLock) {
+            while (pooledCount > 0) {
+                final var buffer = pooledBuffers[--pooledCount];
+                pooledBuffers[pooledCount] = null;
+                bufferPool.release(buffer);
+            }
         }
     }
 
@@ -157,8 +248,9 @@ public abstract sealed class AbstractUploadParser implements MultipartParser.Par
      * parsing if a max size has been set and reached.
      * @param additional The amount to add, always non negative
      */
-    void checkPartSize(final int additional) {
+    void checkPartSize(final long additional) {
         final long partSize = context.incrementAndGetPartBytesRead(additional);
+        final var maxPartSize = settings.getMaxPartSize();
         if (maxPartSize > -1 && partSize > maxPartSize) {
             throw new PartSizeException("The size of the part ("
                     + partSize
@@ -173,8 +265,9 @@ public abstract sealed class AbstractUploadParser implements MultipartParser.Par
      * parsing if a max size has been set and reached.
      * @param additional The amount to add, always non negative
      */
-    void checkRequestSize(final int additional) {
+    void checkRequestSize(final long additional) {
         requestSize += additional;
+        final var maxRequestSize = settings.getMaxRequestSize();
         if (maxRequestSize > -1 && requestSize > maxRequestSize) {
             throw new RequestSizeException("The size of the request ("
                     + requestSize
@@ -185,65 +278,212 @@ public abstract sealed class AbstractUploadParser implements MultipartParser.Par
     }
 
     @Override
-    public void beginPart(final Headers headers) {
-        final var disposition = headers.getHeader(Headers.CONTENT_DISPOSITION);
-        if (disposition != null && disposition.startsWith("form-data")) {
-            final var fieldName = Headers.extractQuotedValueFromHeader(disposition, "name");
-            final var fileName = Headers.extractQuotedValueFromHeader(disposition, "filename");
-            context.reset(new PartStreamImpl(fileName, fieldName, headers));
+    public void beginPart(final Headers headers) throws IOException {
+        if (headers.headerStartsWith(Headers.CONTENT_DISPOSITION, "form-data")) {
+            context.reset(new PartStreamImpl(headers));
+            final var partHeadersCallback = settings.getPartHeadersCallback();
+            if (partHeadersCallback != null) {
+                final var output = partHeadersCallback.onPartHeaders(context);
+                if (output != null) {
+                    // The output is known, the body is not buffered for the part begin callback
+                    context.finishBuffering();
+                    setOutput(output);
+                }
+            }
         }
     }
 
     @Override
     public void data(final ByteBuffer buffer) throws IOException {
         checkPartSize(buffer.remaining());
-        copyBuffer(buffer);
-        if (context.isBuffering() && context.getPartBytesRead() >= sizeThreshold) {
-            validate(false);
+        if (context.isBuffering()) {
+            if (sizeThreshold > 0 && checkBuffer.position() == 0 && buffer.remaining() >= sizeThreshold) {
+                // The first slice covers the threshold, the callback can see it without a copy
+                openOutput(false, buffer.asReadOnlyBuffer());
+            } else {
+                copyBuffer(buffer);
+                if (context.getPartBytesRead() < sizeThreshold) {
+                    return;
+                }
+                validate(false);
+            }
+        }
+        write(buffer);
+    }
+
+    /**
+     * Writes the given data to the output of the current part.
+     * @param buffer The data to write
+     * @throws IOException If an error occurred with the I/O
+     */
+    private void write(final ByteBuffer buffer) throws IOException {
+        if (skipping) {
+            // The rest of the slice being decoded when the part was skipped
+            buffer.position(buffer.limit());
+            return;
+        }
+        if (digests != null) {
+            digests.update(buffer);
         }
-        if (!context.isBuffering()) {
-            while (buffer.hasRemaining()) {
-                writableChannel.write(buffer);
+        if (asyncChannel != null) {
+            pendingWrites.add(buffer);
+            return;
+        }
+        while (buffer.hasRemaining()) {
+            writableChannel.write(buffer);
+        }
+    }
+
+    /**
+     * Returns whether the parser can continue while the writes to the asynchronous channels
+     * are in progress. If it can, it must write the collected data with {@link #flushPendingWrites(Consumer)}
+     * after each parse call. By default the writes are waited for.
+     * @return Whether the writes should be collected
+     */
+    boolean collectsAsyncWrites() {
+        return false;
+    }
+
+    /**
+     * Returns whether there is data or a part end waiting for the asynchronous channel.
+     * @return True if {@link #flushPendingWrites(Consumer)} should be called
+     */
+    boolean hasPendingWrites() {
+        return asyncChannel != null && (partEndDeferred || !pendingWrites.isEmpty());
+    }
+
+    /**
+     * Writes the collected data to the asynchronous channel. If the current part
+     * has ended then the channel is flushed and closed and the part end callback is called
+     * after the writing.
+     * @param callback The function to call when the writing completes later, with the error or null
+     * @return Whether everything has been done before returning, in which case the callback is not called
+     * @throws IOException If an error occurred with the I/O
+     */
+    boolean flushPendingWrites(final Consumer<Throwable> callback) throws IOException {
+        final var completed = pendingWrites.flush(asyncChannel, partEndDeferred, throwable -> {
+            if (throwable == null) {
+                try {
+                    finishDeferredPart();
+                } catch (final IOException | RuntimeException e) {
+                    callback.accept(e);
+                    return;
+                }
             }
+            callback.accept(throwable);
+        });
+        if (completed) {
+            finishDeferredPart();
+        }
+        return completed;
+    }
+
+    /**
+     * Closes the asynchronous channel and calls the part end callback, if the part has ended.
+     * @throws IOException If an error occurred with the I/O
+     */
+    private void finishDeferredPart() throws IOException {
+        if (partEndDeferred) {
+            partEndDeferred = false;
+            final var channel = asyncChannel;
+            asyncChannel = null;
+            channel.close();
+            callPartEndCallback();
         }
     }
 
     private void copyBuffer(final ByteBuffer buffer) {
         final var transferCount = Math.min(checkBuffer.remaining(), buffer.remaining());
         if (transferCount > 0) {
-            checkBuffer.put(buffer.array(), buffer.arrayOffset() + buffer.position(), transferCount);
+            checkBuffer.put(checkBuffer.position(), buffer, buffer.position(), transferCount);
+            checkBuffer.position(checkBuffer.position() + transferCount);
             buffer.position(buffer.position() + transferCount);
         }
     }
 
+    /**
+     * Opens the output of the current part with the buffered bytes, then writes them out.
+     * @param partFinished Whether the part has already ended
+     * @throws IOException If an error occurred with the I/O
+     */
     private void validate(final boolean partFinished) throws IOException {
+        checkBuffer.flip();
+        openOutput(partFinished, checkBuffer.asReadOnlyBuffer());
+        write(checkBuffer);
+    }
+
+    /**
+     * Calls the part begin callback and sets up the channel of the returned output.
+     * @param partFinished Whether the part has already ended
+     * @param firstBytes A read-only view of the first bytes of the part
+     * @throws IOException If an error occurred with the I/O
+     */
+    private void openOutput(final boolean partFinished, final ByteBuffer firstBytes) throws IOException {
         context.finishBuffering();
         if (partFinished) {
             context.getCurrentPart().markAsFinished();
         }
         PartOutput output = null;
-        checkBuffer.flip();
+        final var partBeginCallback = settings.getPartBeginCallback();
         if (partBeginCallback != null) {
-            output = requireNonNull(partBeginCallback.onPartBegin(context, checkBuffer));
-            if (output.safeToCast(WritableByteChannel.class)) {
-                writableChannel = output.unwrap(WritableByteChannel.class);
-            } else if (output.safeToCast(OutputStream.class)) {
-                writableChannel = new OutputStreamBackedChannel(output.unwrap(OutputStream.class));
-            } else if (output.safeToCast(Path.class)) {
+            output = requireNonNull(partBeginCallback.onPartBegin(context, firstBytes));
+        }
+        setOutput(output);
+    }
+
+    /**
+     * Sets up the channel of the output chosen for the current part.
+     * @param output The output returned by a callback, null if there is no callback
+     * @throws IOException If an error occurred with the I/O
+     */
+    private void setOutput(final PartOutput output) throws IOException {
+        if (digests != null) {
+            digests.reset();
+        }
+        skipping = false;
+        if (output == null) {
+            writableChannel = new NullChannel();
+            context.setOutput(PartOutput.from(writableChannel));
+            return;
+        }
+        AsyncWritableChannel channel = null;
+        if (output.isSkipped()) {
+            skipping = true;
+            parseState.skipPart();
+            writableChannel = new NullChannel();
+        } else if (output.safeToCast(AsyncWritableChannel.class)) {
+            channel = output.unwrap(AsyncWritableChannel.class);
+        } else if (output.safeToCast(WritableByteChannel.class)) {
+            writableChannel = output.unwrap(WritableByteChannel.class);
+        } else if (output.safeToCast(OutputStream.class)) {
+            writableChannel = new OutputStreamBackedChannel(output.unwrap(OutputStream.class));
+        } else if (output.safeToCast(Path.class)) {
+            if (settings.isAsyncFileWrites()) {
+                channel = AsyncFileChannel.open(output.unwrap(Path.class), bufferPool, bufferSize);
+            } else {
                 writableChannel = Files.newByteChannel(output.unwrap(Path.class), EnumSet.of(APPEND, CREATE, WRITE));
+            }
+        } else {
+            throw new IllegalArgumentException("Invalid output object!");
+        }
+        if (channel != null) {
+            if (collectsAsyncWrites()) {
+                asyncChannel = channel;
+                if (pendingWrites == null) {
+                    pendingWrites = new PendingWrites(size -> acquire(size, settings.isDirectBuffers()), bufferSize);
+                }
             } else {
-                throw new IllegalArgumentException("Invalid output object!");
+                writableChannel = new BlockingAsyncChannel(channel);
             }
         }
-        if (output == null) {
-            writableChannel = new NullChannel();
-            output = PartOutput.from(writableChannel);
+        final var coalescingSize = settings.getCoalescingSize();
+        if (asyncChannel == null && coalescingSize > 0 && !skipping) {
+            if (coalescingBuffer == null) {
+                coalescingBuffer = acquire(coalescingSize, settings.isDirectBuffers());
+            }
+            writableChannel = new CoalescingChannel(writableChannel, coalescingBuffer);
         }
         context.setOutput(output);
-        checkBuffer.flip();
-        while (checkBuffer.hasRemaining()) {
-            writableChannel.write(checkBuffer);
-        }
     }
 
     @Override
@@ -254,52 +494,30 @@ public abstract sealed class AbstractUploadParser implements MultipartParser.Par
         context.getCurrentPart().markAsFinished();
         checkBuffer.clear();
         context.updatePartBytesRead();
+        if (digests != null && !skipping) {
+            digests.finish(context.getCurrentPart());
+        }
+        if (asyncChannel != null) {
+            partEndDeferred = true;
+            parseState.pause();
+            return;
+        }
         writableChannel.close();
+        callPartEndCallback();
+    }
+
+    private void callPartEndCallback() throws IOException {
+        final var partEndCallback = settings.getPartEndCallback();
         if (partEndCallback != null) {
             partEndCallback.onPartEnd(context);
         }
     }
 
-    public void setPartBeginCallback(final OnPartBegin partBeginCallback) {
-        this.partBeginCallback = partBeginCallback;
-    }
-
-    public void setPartEndCallback(final OnPartEnd partEndCallback) {
-        this.partEndCallback = partEndCallback;
-    }
-
-    public void setRequestCallback(final OnRequestComplete requestCallback) {
-        this.requestCallback = requestCallback;
-    }
-
-    public void setErrorCallback(final OnError errorCallback) {
-        this.errorCallback = errorCallback;
-    }
-
-    public void setUserObject(final Object userObject) {
-        this.userObject = userObject;
-    }
-
     /**
-     * Sets the amount of bytes to allocate. This is distributed
-     * between the buffers used for raw parsing.
-     * @param maxBytesUsed The amount to use
+     * Sets the user object for this request, replacing the configured one.
+     * @param userObject The user object
      */
-    public void setMaxBytesUsed(final int maxBytesUsed) {
-        // There are two byte buffers so each one gets half of the amount
-        this.maxBytesUsed = maxBytesUsed / 2;
-        this.dataBuffer = ByteBuffer.allocate(maxBytesUsed / 2);
-    }
-
-    public void setSizeThreshold(final int sizeThreshold) {
-        this.sizeThreshold = sizeThreshold;
-    }
-
-    public void setMaxPartSize(final long maxPartSize) {
-        this.maxPartSize = maxPartSize;
-    }
-
-    public void setMaxRequestSize(final long maxRequestSize) {
-        this.maxRequestSize = maxRequestSize;
+    public void setUserObject(final Object userObject) {
+        this.userObject = userObject;
     }
 }
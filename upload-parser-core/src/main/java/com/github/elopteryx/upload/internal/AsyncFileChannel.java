@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.github.elopteryx.upload.AsyncWritableChannel;
+import com.github.elopteryx.upload.BufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Writes a part into a file with positional writes, without waiting for them. The data is
+ * copied into pooled direct buffers, so the write completes immediately, unless every buffer is
+ * in flight, and the channel does not have to copy the data again into a temporary direct buffer. This way the latency of the disk overlaps with the reading of the request.
+ * Like the blocking channel used for paths, it appends to the file if it exists.
+ */
+final class AsyncFileChannel implements AsyncWritableChannel, CompletionHandler<Integer, AsyncFileChannel.Chunk> {
+
+    /**
+     * The maximum number of buffers being written at the same time.
+     */
+    static final int MAX_WRITES_IN_FLIGHT = 4;
+
+    /**
+     * The completed stage, returned when the data has been copied.
+     */
+    private static final CompletableFuture<Void> COPIED = CompletableFuture.completedFuture(null);
+
+    /**
+     * The file being written.
+     */
+    private final AsynchronousFileChannel channel;
+
+    /**
+     * The pool supplying the buffers.
+     */
+    private final BufferPool bufferPool;
+
+    /**
+     * The size of the buffers.
+     */
+    private final int bufferSize;
+
+    /**
+     * The buffers which are not being written.
+     */
+    private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>(MAX_WRITES_IN_FLIGHT);
+
+    /**
+     * The number of buffers acquired and the number of those being written.
+     */
+    private int buffers;
+    private int inFlight;
+
+    /**
+     * The position in the file where the next buffer is written.
+     */
+    private long position;
+
+    /**
+     * The data which could not be copied yet, because every buffer was in flight,
+     * and the stage completed when it is copied.
+     */
+    private ByteBuffer waitingSource;
+    private CompletableFuture<Void> waitingWrite;
+
+    /**
+     * The stage returned by the flush, completed when nothing is in flight.
+     */
+    private CompletableFuture<Void> flushed;
+
+    /**
+     * The first error which happened, every following operation fails with it.
+     */
+    private Throwable failure;
+
+    /**
+     * Whether the channel has been closed, the buffers still in flight are released
+     * to the pool when their writes complete or fail.
+     */
+    private boolean closed;
+
+    private AsyncFileChannel(final AsynchronousFileChannel channel, final BufferPool bufferPool, final int bufferSize) throws IOException {
+        this.channel = channel;
+        this.bufferPool = bufferPool;
+        this.bufferSize = bufferSize;
+        this.position = channel.size();
+    }
+
+    /**
+     * Opens the file for writing, creating it if it does not exist.
+     * @param path The file path
+     * @param bufferPool The pool supplying the buffers
+     * @param bufferSize The size of the buffers
+     * @return A new instance
+     * @throws IOException If the file could not be opened
+     */
+    static AsyncFileChannel open(final Path path, final BufferPool bufferPool, final int bufferSize) throws IOException {
+        final var channel = AsynchronousFileChannel.open(path, CREATE, WRITE);
+        try {
+            return new AsyncFileChannel(channel, bufferPool, bufferSize);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletionStage<Void> write(final ByteBuffer buffer) {
+        synchronized (this) {
+            if (failure != null) {
+                return CompletableFuture.failedFuture(failure);
+            }
+            if (copy(buffer)) {
+                return COPIED;
+            }
+            waitingSource = buffer;
+            waitingWrite = new CompletableFuture<>();
+            return waitingWrite;
+        }
+    }
+
+    /**
+     * Copies the data into free buffers and starts writing them. Must hold the lock.
+     * @param source The data to copy
+     * @return Whether every byte has been copied
+     */
+    private boolean copy(final ByteBuffer source) {
+        while (source.hasRemaining()) {
+            final var buffer = nextFreeBuffer();
+            if (buffer == null) {
+                return false;
+            }
+            final var count = Math.min(buffer.remaining(), source.remaining());
+            buffer.put(0, source, source.position(), count);
+            buffer.limit(count);
+            source.position(source.position() + count);
+            inFlight++;
+            channel.write(buffer, position, new Chunk(buffer, position), this);
+            position += count;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a free buffer, acquiring a new one if the limit allows it. Must hold the lock.
+     * @return The buffer or null if every buffer is in flight
+     */
+    private ByteBuffer nextFreeBuffer() {
+        final var buffer = freeBuffers.poll();
+        if (buffer != null || buffers == MAX_WRITES_IN_FLIGHT) {
+            return buffer;
+        }
+        buffers++;
+        return bufferPool.acquire(bufferSize, true).clear();
+    }
+
+    @Override
+    public void completed(final Integer result, final Chunk chunk) {
+        final var buffer = chunk.buffer;
+        if (buffer.hasRemaining()) {
+            // Positional writes can be partial, the rest goes right after the written bytes
+            channel.write(buffer, chunk.start + buffer.position(), chunk, this);
+            return;
+        }
+        CompletableFuture<Void> writeToComplete = null;
+        CompletableFuture<Void> flushToComplete = null;
+        synchronized (this) {
+            inFlight--;
+            if (closed) {
+                bufferPool.release(buffer);
+                return;
+            }
+            freeBuffers.add(buffer.clear());
+            if (waitingSource != null && copy(waitingSource)) {
+                waitingSource = null;
+                writeToComplete = waitingWrite;
+                waitingWrite = null;
+            }
+            if (inFlight == 0 && waitingSource == null && flushed != null) {
+                flushToComplete = flushed;
+                flushed = null;
+            }
+        }
+        if (writeToComplete != null) {
+            writeToComplete.complete(null);
+        }
+        if (flushToComplete != null) {
+            flushToComplete.complete(null);
+        }
+    }
+
+    @Override
+    public void failed(final Throwable throwable, final Chunk chunk) {
+        final var buffer = chunk.buffer;
+        final CompletableFuture<Void> writeToFail;
+        final CompletableFuture<Void> flushToFail;
+        synchronized (this) {
+            inFlight--;
+            if (closed) {
+                bufferPool.release(buffer);
+            } else {
+                freeBuffers.add(buffer.clear());
+            }
+            if (failure == null) {
+                failure = throwable;
+            }
+            writeToFail = waitingWrite;
+            flushToFail = flushed;
+            waitingSource = null;
+            waitingWrite = null;
+            flushed = null;
+        }
+        if (writeToFail != null) {
+            writeToFail.completeExceptionally(throwable);
+        }
+        if (flushToFail != null) {
+            flushToFail.completeExceptionally(throwable);
+        }
+    }
+
+    @Override
+    public synchronized CompletionStage<Void> flush() {
+        if (failure != null) {
+            return CompletableFuture.failedFuture(failure);
+        }
+        if (inFlight == 0) {
+            return COPIED;
+        }
+        flushed = new CompletableFuture<>();
+        return flushed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            synchronized (this) {
+                // The buffers still in flight after a failure are released when their writes end
+                closed = true;
+                ByteBuffer buffer;
+                while ((buffer = freeBuffers.poll()) != null) {
+                    bufferPool.release(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * A buffer being written and its position in the file.
+     */
+    static final class Chunk {
+
+        private final ByteBuffer buffer;
+        private final long start;
+
+        private Chunk(final ByteBuffer buffer, final long start) {
+            this.buffer = buffer;
+            this.start = start;
+        }
+    }
+}
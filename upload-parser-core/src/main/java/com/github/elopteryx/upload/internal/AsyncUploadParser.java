@@ -21,6 +21,10 @@ import static java.util.Objects.requireNonNull;
 import com.github.elopteryx.upload.errors.MultipartException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletInputStream;
@@ -29,9 +33,11 @@ import jakarta.servlet.http.HttpServletRequest;
 /**
  * The asynchronous implementation of the parser. This parser can be used to perform a parse
  * only if the calling servlet supports async mode.
- * Implements the listener interface. Called by the servlet container whenever data is available.
+ * Registers a read listener which delegates to this class. Called by the servlet container whenever data is available.
+ * The class itself does not implement the listener interface, so the servlet API is only needed if it is used.
+ * If an executor is configured, the container threads only read the data, the parsing is done by the executor.
  */
-public final class AsyncUploadParser extends AbstractUploadParser implements ReadListener {
+public final class AsyncUploadParser extends AbstractUploadParser {
 
     /**
      * The request object.
@@ -43,8 +49,27 @@ public final class AsyncUploadParser extends AbstractUploadParser implements Rea
      */
     private ServletInputStream servletInputStream;
 
-    public AsyncUploadParser(final HttpServletRequest request) {
+    /**
+     * Hands the data over to the executor, null if the parsing runs on the container threads.
+     */
+    private final Offload offload;
+
+    /**
+     * The state shared with the threads completing the writes to the asynchronous channels:
+     * whether a thread is parsing, whether another thread wanted to parse meanwhile, whether
+     * the collected data is being written, whether every byte has arrived and whether the parsing ended.
+     */
+    private boolean parsing;
+    private boolean parseRequested;
+    private boolean writing;
+    private boolean allDataRead;
+    private boolean ended;
+
+    public AsyncUploadParser(final ParserSettings settings, final HttpServletRequest request) {
+        super(settings);
         this.request = requireNonNull(request);
+        final var executor = settings.getExecutor();
+        this.offload = executor == null ? null : new Offload(executor, settings.getReadAheadBuffers());
     }
 
     /**
@@ -55,6 +80,11 @@ public final class AsyncUploadParser extends AbstractUploadParser implements Rea
     private void init() throws IOException {
         init(request);
         servletInputStream = request.getInputStream();
+        if (offload != null) {
+            offload.init();
+        } else {
+            dataBuffer.limit(0);
+        }
     }
 
     /**
@@ -63,14 +93,34 @@ public final class AsyncUploadParser extends AbstractUploadParser implements Rea
      * @throws IOException If an error occurred with I/O
      */
     public void setupAsyncParse() throws IOException {
-        init();
-        if (!request.isAsyncSupported()) {
-            throw new IllegalStateException("The servlet does not support async mode! Enable it or use a blocking parser.");
-        }
-        if (!request.isAsyncStarted()) {
-            request.startAsync();
+        try {
+            init();
+            if (!request.isAsyncSupported()) {
+                throw new IllegalStateException("The servlet does not support async mode! Enable it or use a blocking parser.");
+            }
+            if (!request.isAsyncStarted()) {
+                request.startAsync();
+            }
+        } catch (final IOException | RuntimeException e) {
+            releaseBuffers();
+            throw e;
         }
-        servletInputStream.setReadListener(this);
+        servletInputStream.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                AsyncUploadParser.this.onDataAvailable();
+            }
+
+            @Override
+            public void onAllDataRead() throws IOException {
+                AsyncUploadParser.this.onAllDataRead();
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+                AsyncUploadParser.this.onError(throwable);
+            }
+        });
     }
 
     /**
@@ -79,34 +129,45 @@ public final class AsyncUploadParser extends AbstractUploadParser implements Rea
      * this method if and only if ServletInputStream.isReady() method has been called and has returned false.
      * @throws IOException if an I/O related error has occurred during processing
      */
-    @Override
     public void onDataAvailable() throws IOException {
-        while (servletInputStream.isReady() && !servletInputStream.isFinished()) {
-            parseCurrentItem();
+        if (offload != null) {
+            offload.read();
+            return;
         }
+        process();
     }
 
     /**
      * Parses the servlet stream once. Will switch to a new item
-     * if the current one is fully read.
+     * if the current one is fully read. If the parsing paused in the previous call,
+     * the remaining data is parsed first. Starts writing the data collected for an asynchronous channel.
      *
      * @return Whether it should be called again
      * @throws IOException if an I/O related error has occurred during processing
      */
     private boolean parseCurrentItem() throws IOException {
-        var count = -1;
-        if (!servletInputStream.isFinished()) {
-            count = servletInputStream.read(dataBuffer.array());
-        }
-        if (count == -1) {
-            if (!parseState.isComplete()) {
-                throw new MultipartException("Stream ended unexpectedly!");
+        if (!dataBuffer.hasRemaining()) {
+            var count = -1;
+            if (!servletInputStream.isFinished()) {
+                count = servletInputStream.read(dataBuffer.array(), dataBuffer.arrayOffset(), dataBuffer.capacity());
+            }
+            if (count == -1) {
+                if (!parseState.isComplete()) {
+                    throw new MultipartException("Stream ended unexpectedly!");
+                }
+                return false;
             }
-        } else {
             checkRequestSize(count);
             dataBuffer.position(0);
             dataBuffer.limit(count);
-            parseState.parse(dataBuffer);
+        }
+        parseState.parse(dataBuffer);
+        if (parseState.isComplete()) {
+            // The epilogue is ignored
+            dataBuffer.position(dataBuffer.limit());
+        }
+        if (hasPendingWrites()) {
+            startWrites();
         }
         return !parseState.isComplete();
     }
@@ -115,32 +176,190 @@ public final class AsyncUploadParser extends AbstractUploadParser implements Rea
      * Invoked when all data for the current request has been read.
      * @throws IOException if an I/O related error has occurred during processing
      */
-    @Override
     public void onAllDataRead() throws IOException {
         // After the servlet input stream is finished there are still unread bytes or
         // in case of fast uploads or small sizes the initial parse can read the whole
         // input stream, causing the {@link #onDataAvailable} not to be called even once.
-        while (true) {
-            if (!parseCurrentItem()) {
-                break;
+        if (offload != null) {
+            offload.onAllDataRead();
+            return;
+        }
+        synchronized (this) {
+            allDataRead = true;
+        }
+        process();
+    }
+
+    /**
+     * Parses the data which can be read without blocking, or all of it, after the container
+     * reported that every byte has arrived. Only one thread parses at a time, if another
+     * thread calls this meanwhile, the current one parses again before returning. The parsing
+     * stops while the data collected for an asynchronous channel is being written, the
+     * thread completing the writes continues it.
+     * @throws IOException if an I/O related error has occurred during processing
+     */
+    private void process() throws IOException {
+        synchronized (this) {
+            if (parsing || writing || ended) {
+                parseRequested = true;
+                return;
+            }
+            parsing = true;
+        }
+        try {
+            while (true) {
+                final boolean finishing;
+                synchronized (this) {
+                    parseRequested = false;
+                    if (writing || ended) {
+                        parsing = false;
+                        break;
+                    }
+                    finishing = allDataRead;
+                }
+                if (finishing) {
+                    if (!parseCurrentItem() && !isWriting()) {
+                        synchronized (this) {
+                            parsing = false;
+                            ended = true;
+                        }
+                        completeRequest();
+                        return;
+                    }
+                } else if (dataBuffer.hasRemaining() || servletInputStream.isReady() && !servletInputStream.isFinished()) {
+                    parseCurrentItem();
+                } else {
+                    synchronized (this) {
+                        if (!parseRequested) {
+                            parsing = false;
+                            return;
+                        }
+                    }
+                }
             }
+        } catch (final IOException | RuntimeException e) {
+            synchronized (this) {
+                parsing = false;
+                ended = true;
+            }
+            releaseBuffers();
+            throw e;
         }
+        releaseIfEnded();
+    }
+
+    /**
+     * Releases the buffers, then calls the request callback.
+     */
+    private void completeRequest() {
+        releaseBuffers();
         try {
+            final var requestCallback = settings.getRequestCallback();
             if (requestCallback != null) {
                 requestCallback.onRequestComplete(context);
             }
-        } catch (final ServletException e) {
+        } catch (final IOException | ServletException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private synchronized boolean isWriting() {
+        return writing;
+    }
+
+    /**
+     * Starts writing the collected data, the parsing stops until it is done.
+     * @throws IOException If a write failed immediately
+     */
+    private void startWrites() throws IOException {
+        synchronized (this) {
+            writing = true;
+        }
+        final boolean completed;
+        try {
+            completed = flushPendingWrites(this::onWritesComplete);
+        } catch (final IOException | RuntimeException e) {
+            synchronized (this) {
+                writing = false;
+            }
+            throw e;
+        }
+        if (completed) {
+            synchronized (this) {
+                writing = false;
+            }
+        }
+    }
+
     /**
-     * Invoked when an error occurs processing the request.
+     * Called by the thread completing the writes, continues the parsing.
+     * @param throwable The error or null if the writes were successful
+     */
+    private void onWritesComplete(final Throwable throwable) {
+        synchronized (this) {
+            writing = false;
+        }
+        if (releaseIfEnded()) {
+            return;
+        }
+        if (throwable != null) {
+            onError(throwable);
+            return;
+        }
+        try {
+            process();
+        } catch (final IOException | RuntimeException e) {
+            onError(e);
+        }
+    }
+
+    /**
+     * Releases the buffers if an error ended the parsing while another thread was using them.
+     * @return Whether the parsing has ended
+     */
+    private boolean releaseIfEnded() {
+        synchronized (this) {
+            if (!ended || parsing || writing) {
+                return ended;
+            }
+        }
+        releaseBuffers();
+        return true;
+    }
+
+    /**
+     * Invoked when an error occurs processing the request. If the buffers
+     * are in use, they are released by the thread using them.
      * @param throwable The unhandled error that happened
      */
-    @Override
     public void onError(final Throwable throwable) {
+        if (offload != null) {
+            offload.fail(throwable);
+            return;
+        }
+        final boolean release;
+        synchronized (this) {
+            ended = true;
+            release = !parsing && !writing;
+        }
+        if (release) {
+            releaseBuffers();
+        }
+        callErrorCallback(throwable);
+    }
+
+    @Override
+    boolean collectsAsyncWrites() {
+        return offload == null;
+    }
+
+    /**
+     * Calls the error callback, wrapping its checked exceptions.
+     * @param throwable The error that happened
+     */
+    private void callErrorCallback(final Throwable throwable) {
         try {
+            final var errorCallback = settings.getErrorCallback();
             if (errorCallback != null) {
                 errorCallback.onError(context, throwable);
             }
@@ -148,4 +367,331 @@ public final class AsyncUploadParser extends AbstractUploadParser implements Rea
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Moves the parsing to an executor. The container threads read the request stream into
+     * free buffers and queue them, the executor parses the queued buffers in order, with at most one
+     * task running at a time. When every buffer is waiting to be parsed, the reading stops without
+     * waiting for the stream to become not ready, the parsing task continues it after freeing a buffer.
+     * Only one thread reads the stream at a time, if another thread wants to read, the current reader
+     * does it for that thread before returning. The buffers are released after the parsing
+     * ended and the last reader returned.
+     */
+    private final class Offload implements Runnable {
+
+        /**
+         * The executor running the parsing.
+         */
+        private final Executor executor;
+
+        /**
+         * The maximum number of buffers used for reading.
+         */
+        private final int maxBuffers;
+
+        /**
+         * The buffers which were read but not yet parsed, in order.
+         */
+        private final ArrayDeque<ByteBuffer> readBuffers;
+
+        /**
+         * The buffers which can be used for reading.
+         */
+        private final ArrayDeque<ByteBuffer> freeBuffers;
+
+        /**
+         * The number of buffers acquired so far.
+         */
+        private int buffers;
+
+        /**
+         * Whether a thread is reading the stream.
+         */
+        private boolean reading;
+
+        /**
+         * Whether another thread wanted to read while the stream was being read.
+         */
+        private boolean readRequested;
+
+        /**
+         * Whether the reading stopped because there were no free buffers.
+         */
+        private boolean paused;
+
+        /**
+         * Whether the parsing task is submitted or running.
+         */
+        private boolean scheduled;
+
+        /**
+         * Whether the container reported that every byte has arrived.
+         */
+        private boolean allDataRead;
+
+        /**
+         * Whether the stream has reached its end.
+         */
+        private boolean endOfStream;
+
+        /**
+         * Whether the parsing has ended, successfully or not.
+         */
+        private boolean finished;
+
+        /**
+         * Whether the buffers were released.
+         */
+        private boolean released;
+
+        /**
+         * The first error which happened while reading, if any.
+         */
+        private Throwable failure;
+
+        Offload(final Executor executor, final int maxBuffers) {
+            this.executor = executor;
+            this.maxBuffers = maxBuffers;
+            this.readBuffers = new ArrayDeque<>(maxBuffers);
+            this.freeBuffers = new ArrayDeque<>(maxBuffers);
+        }
+
+        /**
+         * Takes the data buffer as the first buffer for reading.
+         */
+        void init() {
+            freeBuffers.add(dataBuffer);
+            buffers = 1;
+        }
+
+        /**
+         * Invoked by the container when all data has been read. The rest of the data
+         * is read regardless of the stream being ready.
+         */
+        void onAllDataRead() {
+            synchronized (this) {
+                allDataRead = true;
+            }
+            read();
+        }
+
+        /**
+         * Reads the stream into the free buffers, as long as possible. If another
+         * thread is reading, that thread will read again, instead of this one.
+         */
+        void read() {
+            synchronized (this) {
+                if (reading) {
+                    readRequested = true;
+                    return;
+                }
+                reading = true;
+            }
+            try {
+                while (readOnce()) {
+                    // Continue while there is something to read
+                }
+            } catch (final IOException | RuntimeException e) {
+                fail(e);
+                synchronized (this) {
+                    stopReading();
+                }
+            }
+        }
+
+        /**
+         * Reads once into a free buffer and queues it. Clears the reading flag if it returns false.
+         * @return Whether it should be called again
+         * @throws IOException If an error occurred with the I/O
+         */
+        private boolean readOnce() throws IOException {
+            final ByteBuffer buffer;
+            final boolean readRest;
+            synchronized (this) {
+                readRequested = false;
+                if (finished || endOfStream || failure != null) {
+                    return stopReading();
+                }
+                buffer = nextFreeBuffer();
+                if (buffer == null) {
+                    paused = true;
+                    return stopReading();
+                }
+                readRest = allDataRead;
+            }
+            var count = 0;
+            try {
+                if (servletInputStream.isFinished()) {
+                    count = readRest ? -1 : 0;
+                } else if (readRest || servletInputStream.isReady()) {
+                    count = servletInputStream.read(buffer.array(), buffer.arrayOffset(), buffer.capacity());
+                }
+            } catch (final IOException | RuntimeException e) {
+                synchronized (this) {
+                    freeBuffers.add(buffer);
+                }
+                throw e;
+            }
+            final boolean again;
+            synchronized (this) {
+                if (count > 0) {
+                    buffer.position(0);
+                    buffer.limit(count);
+                    readBuffers.add(buffer);
+                    again = true;
+                } else {
+                    freeBuffers.add(buffer);
+                    if (count == -1) {
+                        endOfStream = true;
+                        again = true;
+                    } else {
+                        again = readRequested || stopReading();
+                    }
+                }
+            }
+            if (count != 0) {
+                schedule();
+            }
+            return again;
+        }
+
+        /**
+         * Returns a free buffer, acquiring a new one if the limit allows it. Must hold the lock.
+         * @return The buffer or null if there are none
+         */
+        private ByteBuffer nextFreeBuffer() {
+            final var buffer = freeBuffers.poll();
+            if (buffer != null || buffers == maxBuffers) {
+                return buffer;
+            }
+            buffers++;
+            return acquire(dataBuffer.capacity());
+        }
+
+        /**
+         * Clears the reading flag, then releases the buffers if possible. Must hold the lock.
+         * @return Always false
+         */
+        private boolean stopReading() {
+            reading = false;
+            releaseIfIdle();
+            return false;
+        }
+
+        /**
+         * Releases the buffers if the parsing ended and nobody reads. Must hold the lock.
+         */
+        private void releaseIfIdle() {
+            if (finished && !reading && !released) {
+                released = true;
+                readBuffers.clear();
+                freeBuffers.clear();
+                releaseBuffers();
+            }
+        }
+
+        /**
+         * Records the error, which is reported by the parsing task.
+         * @param throwable The error that happened
+         */
+        void fail(final Throwable throwable) {
+            synchronized (this) {
+                if (failure == null) {
+                    failure = throwable;
+                }
+            }
+            schedule();
+        }
+
+        /**
+         * Submits the parsing task, unless it is already submitted. If the executor
+         * rejects it, the error is reported on the current thread.
+         */
+        private void schedule() {
+            synchronized (this) {
+                if (scheduled || finished) {
+                    return;
+                }
+                scheduled = true;
+            }
+            try {
+                executor.execute(this);
+            } catch (final RejectedExecutionException e) {
+                synchronized (this) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+                run();
+            }
+        }
+
+        /**
+         * Parses the queued buffers, in order. Resumes the reading if it stopped
+         * because of the lack of free buffers.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                final ByteBuffer buffer;
+                final Throwable error;
+                synchronized (this) {
+                    error = failure;
+                    buffer = error == null ? readBuffers.poll() : null;
+                    if (error == null && buffer == null && !endOfStream) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                if (buffer == null) {
+                    complete(error);
+                    return;
+                }
+                try {
+                    checkRequestSize(buffer.remaining());
+                    parseState.parse(buffer);
+                } catch (final IOException | RuntimeException e) {
+                    complete(e);
+                    return;
+                }
+                final boolean resume;
+                synchronized (this) {
+                    buffer.clear();
+                    freeBuffers.add(buffer);
+                    resume = paused;
+                    paused = false;
+                }
+                if (resume) {
+                    read();
+                }
+            }
+        }
+
+        /**
+         * Ends the parsing, then calls the appropriate callback.
+         * @param error The error that happened or null if the stream was fully read
+         */
+        private void complete(final Throwable error) {
+            synchronized (this) {
+                finished = true;
+                releaseIfIdle();
+            }
+            var throwable = error;
+            if (throwable == null) {
+                try {
+                    if (!parseState.isComplete()) {
+                        throw new MultipartException("Stream ended unexpectedly!");
+                    }
+                    final var requestCallback = settings.getRequestCallback();
+                    if (requestCallback != null) {
+                        requestCallback.onRequestComplete(context);
+                    }
+                    return;
+                } catch (final IOException | ServletException | RuntimeException e) {
+                    throwable = e;
+                }
+            }
+            callErrorCallback(throwable);
+        }
+    }
 }
@@ -22,11 +22,13 @@ import static java.nio.charset.StandardCharsets.US_ASCII;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * Copied from Undertow. Stripped out the unnecessary parts, like the
  * encoder and the methods which accepted a different parameter,
- * for example a byte array, instead of a ByteBuffer.
+ * for example a byte array, instead of a ByteBuffer. Added a table driven
+ * fast path for the runs without line breaks and padding.
  *
  * <p>An efficient and flexible MIME Base64 implementation.</p>
  *
@@ -37,11 +39,19 @@ class Base64Decoder {
     private static final byte[] ENCODING_TABLE;
     private static final byte[] DECODING_TABLE = new byte[80];
 
+    /**
+     * The six bit values of the Base64 characters for every byte value, -1 for
+     * everything else, including padding and white space. Used by the fast path.
+     */
+    private static final byte[] QUAD_TABLE = new byte[256];
+
     static {
         ENCODING_TABLE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(US_ASCII);
+        Arrays.fill(QUAD_TABLE, (byte) -1);
         for (var i = 0; i < ENCODING_TABLE.length; i++) {
             final var offSet = (ENCODING_TABLE[i] & 0xFF) - 43;
             DECODING_TABLE[offSet] = (byte)(i + 1);  // zero = illegal
+            QUAD_TABLE[ENCODING_TABLE[i] & 0xFF] = (byte) i;
         }
     }
 
@@ -91,6 +101,14 @@ class Base64Decoder {
         return byteInt;
     }
 
+    /**
+     * Clears the saved state, so the decoder can be used for a new stream.
+     */
+    void reset() {
+        state = 0;
+        last = 0;
+    }
+
     /**
      * Decodes one Base64 byte buffer into another. This method will return and save state
      * if the target does not have the required capacity. Subsequent calls with a new target will
@@ -111,10 +129,20 @@ class Base64Decoder {
         var last = this.last;
         var state = this.state;
 
+        final var fastPath = source.hasArray() && target.hasArray();
         var remaining = source.remaining();
         var targetRemaining = target.remaining();
         var byteInt = 0;
-        while (remaining-- > 0 && targetRemaining > 0) {
+        while (true) {
+            if (fastPath && state == 0) {
+                //between two quantums, decode the clean runs in bulk
+                decodeQuantums(source, target);
+                remaining = source.remaining();
+                targetRemaining = target.remaining();
+            }
+            if (remaining-- <= 0 || targetRemaining <= 0) {
+                break;
+            }
             byteInt = nextByte(source, state, last, false);
             if (byteInt == MARK) {
                 last = MARK;
@@ -184,6 +212,40 @@ class Base64Decoder {
         this.state = state;
     }
 
+    /**
+     * Decodes groups of four Base64 characters into three bytes, working directly on the
+     * backing arrays. Stops before the first group containing anything else than the
+     * Base64 alphabet, like line breaks or padding, which are left for the state machine.
+     * Must only be called between two quantums, when there are no saved bits.
+     * @param source the byte buffer to read encoded data from, must have an accessible array
+     * @param target the byte buffer to write decoded data to, must have an accessible array
+     */
+    private static void decodeQuantums(final ByteBuffer source, final ByteBuffer target) {
+        final var sourceArray = source.array();
+        final var sourceLimit = source.arrayOffset() + source.limit();
+        final var targetArray = target.array();
+        final var targetLimit = target.arrayOffset() + target.limit();
+        var sourceIndex = source.arrayOffset() + source.position();
+        var targetIndex = target.arrayOffset() + target.position();
+        while (sourceIndex + 4 <= sourceLimit && targetIndex + 3 <= targetLimit) {
+            final int first = QUAD_TABLE[sourceArray[sourceIndex] & 0xFF];
+            final int second = QUAD_TABLE[sourceArray[sourceIndex + 1] & 0xFF];
+            final int third = QUAD_TABLE[sourceArray[sourceIndex + 2] & 0xFF];
+            final int fourth = QUAD_TABLE[sourceArray[sourceIndex + 3] & 0xFF];
+            if ((first | second | third | fourth) < 0) {
+                break;
+            }
+            final var bits = first << 18 | second << 12 | third << 6 | fourth;
+            targetArray[targetIndex] = (byte) (bits >>> 16);
+            targetArray[targetIndex + 1] = (byte) (bits >>> 8);
+            targetArray[targetIndex + 2] = (byte) bits;
+            sourceIndex += 4;
+            targetIndex += 3;
+        }
+        source.position(sourceIndex - source.arrayOffset());
+        target.position(targetIndex - target.arrayOffset());
+    }
+
     private static void drain(final ByteBuffer source, int byteInt, final int state, int last) {
         while (byteInt != DONE && source.remaining() > 0) {
             try {
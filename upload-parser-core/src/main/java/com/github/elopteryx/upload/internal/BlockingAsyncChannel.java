@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.AsyncWritableChannel;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A blocking channel which waits for each write of the asynchronous channel to complete.
+ * Used by the parsers which are allowed to block, where there is no need to collect the data.
+ */
+final class BlockingAsyncChannel implements WritableByteChannel {
+
+    /**
+     * The channel to write to.
+     */
+    private final AsyncWritableChannel channel;
+
+    /**
+     * Flag to determine whether the channel is closed or not.
+     */
+    private boolean open = true;
+
+    BlockingAsyncChannel(final AsyncWritableChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        final var count = src.remaining();
+        await(channel.write(src));
+        src.position(src.limit());
+        return count;
+    }
+
+    /**
+     * Waits for the given stage to complete.
+     * @param stage The stage of the operation
+     * @throws IOException If the operation failed or the thread was interrupted
+     */
+    private static void await(final CompletionStage<Void> stage) throws IOException {
+        final var result = new CompletableFuture<Void>();
+        stage.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(throwable);
+            }
+        });
+        try {
+            result.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the write to complete!");
+        } catch (final ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw cause instanceof IOException ioException ? ioException : new IOException(cause);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        try {
+            await(channel.flush());
+        } finally {
+            channel.close();
+        }
+    }
+}
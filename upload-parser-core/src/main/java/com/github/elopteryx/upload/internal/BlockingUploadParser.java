@@ -16,32 +16,57 @@
 
 package com.github.elopteryx.upload.internal;
 
+import static java.util.Objects.requireNonNull;
+
 import com.github.elopteryx.upload.UploadContext;
 import com.github.elopteryx.upload.errors.MultipartException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 /**
  * The blocking implementation of the parser. This parser can be used to perform a
- * blocking parse, whether the servlet supports async mode or not.
+ * blocking parse, whether the servlet supports async mode or not. It can also
+ * parse multipart data which does not come from a servlet request, like a channel,
+ * a stream or buffers already in memory.
  */
 public final class BlockingUploadParser extends AbstractUploadParser {
 
     /**
-     * The request object.
+     * The request object, null if the data does not come from a servlet request.
      */
     private final HttpServletRequest request;
 
+    /**
+     * The value of the content type header, used if there is no request.
+     */
+    private final String contentType;
+
     /**
      * The stream to read.
      */
     private InputStream inputStream;
 
-    public BlockingUploadParser(final HttpServletRequest request) {
+    public BlockingUploadParser(final ParserSettings settings, final HttpServletRequest request) {
+        super(settings);
         this.request = request;
+        this.contentType = null;
+    }
+
+    /**
+     * Creates a parser which is not bound to a servlet request.
+     * @param settings The shared configuration
+     * @param contentType The value of the content type header, must contain the boundary
+     */
+    public BlockingUploadParser(final ParserSettings settings, final String contentType) {
+        super(settings);
+        this.request = null;
+        this.contentType = requireNonNull(contentType);
     }
 
     /**
@@ -50,29 +75,182 @@ public final class BlockingUploadParser extends AbstractUploadParser {
      * @throws IOException If an error occurs with the IO
      */
     private void init() throws IOException {
-        init(request);
-        inputStream = request.getInputStream();
+        if (request == null) {
+            init(contentType);
+        } else {
+            init(request);
+            inputStream = ServletSupport.getInputStream(request);
+        }
     }
 
     /**
-     * Performs a full parsing and returns the used context object.
+     * Performs a full parsing of the servlet request and returns the used context object.
      * @return The upload context
      * @throws IOException If an error occurred with the I/O
      * @throws ServletException If an error occurred with the servlet
      */
     public UploadContext doBlockingParse() throws IOException, ServletException {
-        init();
+        return parse(this::blockingRead);
+    }
+
+    /**
+     * Performs a full parsing of the given stream and returns the used context object.
+     * @param inputStream The stream to read
+     * @return The upload context
+     * @throws IOException If an error occurred with the I/O or in the error callback
+     */
+    public UploadContext doBlockingParse(final InputStream inputStream) throws IOException {
+        this.inputStream = requireNonNull(inputStream);
+        return parseWithoutServlet(this::blockingRead);
+    }
+
+    /**
+     * Performs a full parsing of the given channel and returns the used context object.
+     * @param channel The channel to read
+     * @return The upload context
+     * @throws IOException If an error occurred with the I/O or in the error callback
+     */
+    public UploadContext doBlockingParse(final ReadableByteChannel channel) throws IOException {
+        requireNonNull(channel);
+        return parseWithoutServlet(() -> blockingRead(channel));
+    }
+
+    /**
+     * Performs a full parsing of the given buffers and returns the used context object. The
+     * buffers are parsed in place, without copying, their positions are updated.
+     * @param buffers The buffers containing the complete request body, in order
+     * @return The upload context
+     * @throws IOException If an error occurred with the I/O or in the error callback
+     */
+    public UploadContext doBlockingParse(final Iterable<? extends ByteBuffer> buffers) throws IOException {
+        requireNonNull(buffers);
+        return parseWithoutServlet(() -> parseBuffers(buffers));
+    }
+
+    /**
+     * Same as {@link #parse(BlockingReader)}, but the checked exceptions thrown
+     * by the error callback, other than IOException, are wrapped. This way the servlet classes
+     * are not needed at runtime.
+     * @param reader The function reading the data
+     * @return The upload context
+     * @throws IOException If an error occurred with the I/O or in the error callback
+     */
+    private UploadContext parseWithoutServlet(final BlockingReader reader) throws IOException {
         try {
-            blockingRead();
+            return parse(reader);
+        } catch (final Exception e) {
+            if (e instanceof IOException ioException) {
+                throw ioException;
+            } else if (e instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Sets up the parser, reads everything with the given function, then calls the appropriate callback.
+     * The buffers are released at the end, even if the setup or the error callback failed.
+     * @param reader The function reading the data
+     * @return The upload context
+     * @throws IOException If an error occurred with the I/O
+     * @throws ServletException If an error occurred in the error callback
+     */
+    private UploadContext parse(final BlockingReader reader) throws IOException, ServletException {
+        try {
+            init();
+            readAndComplete(reader);
+        } finally {
+            releaseBuffers();
+        }
+        return context;
+    }
+
+    /**
+     * Reads everything with the given function, then calls the appropriate callback.
+     * @param reader The function reading the data
+     * @throws IOException If an error occurred in the error callback
+     * @throws ServletException If an error occurred in the error callback
+     */
+    private void readAndComplete(final BlockingReader reader) throws IOException, ServletException {
+        try {
+            reader.read();
+            final var requestCallback = settings.getRequestCallback();
             if (requestCallback != null) {
                 requestCallback.onRequestComplete(context);
             }
         } catch (final Exception e) {
+            final var errorCallback = settings.getErrorCallback();
             if (errorCallback != null) {
                 errorCallback.onError(context, e);
             }
         }
-        return context;
+    }
+
+    /**
+     * Sets up the parser on the calling thread, then puts the request into async mode and
+     * performs the blocking parsing on a new virtual thread. The calling servlet thread
+     * is released as soon as this method returns, the result of the parsing can only be
+     * observed through the callbacks, which are responsible for completing the async context.
+     * If the error callback throws an exception, the async context is completed by the parser,
+     * with an internal server error status if the response is not committed yet, then the
+     * exception is passed to the uncaught exception handler of the virtual thread.
+     * @throws IOException If an error occurred with the request stream
+     * @throws UnsupportedOperationException If the runtime does not support virtual threads
+     */
+    public void setupVirtualThreadParse() throws IOException {
+        if (!VirtualThreads.isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this runtime! Use Java 21 or newer, or an async parser.");
+        }
+        try {
+            init();
+            if (!request.isAsyncSupported()) {
+                throw new IllegalStateException("The servlet does not support async mode! Enable it or use a blocking parser.");
+            }
+            if (!request.isAsyncStarted()) {
+                request.startAsync();
+            }
+            VirtualThreads.start(this::parseOnVirtualThread);
+        } catch (final IOException | RuntimeException e) {
+            releaseBuffers();
+            throw e;
+        }
+    }
+
+    /**
+     * The task of the virtual thread, the parser is already set up.
+     */
+    private void parseOnVirtualThread() {
+        try {
+            try {
+                readAndComplete(this::blockingRead);
+            } finally {
+                releaseBuffers();
+            }
+        } catch (final IOException | ServletException | RuntimeException e) {
+            completeAfterFailure(e);
+        }
+    }
+
+    /**
+     * Ends the request after the error callback failed, it could not complete the async
+     * context, so the request would never finish otherwise. There is no caller to
+     * throw the exception to, it is passed to the uncaught exception handler.
+     * @param exception The exception thrown by the error callback
+     */
+    private void completeAfterFailure(final Exception exception) {
+        try {
+            final var asyncContext = request.getAsyncContext();
+            if (asyncContext.getResponse() instanceof HttpServletResponse response && !response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            asyncContext.complete();
+        } catch (final IllegalStateException e) {
+            // The callback completed the async context before failing
+            exception.addSuppressed(e);
+        }
+        final var thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, exception);
     }
 
     /**
@@ -83,7 +261,7 @@ public final class BlockingUploadParser extends AbstractUploadParser {
      */
     private void blockingRead() throws IOException {
         while (true) {
-            final var count = inputStream.read(dataBuffer.array());
+            final var count = inputStream.read(dataBuffer.array(), dataBuffer.arrayOffset(), dataBuffer.capacity());
             if (count == -1) {
                 if (parseState.isComplete()) {
                     break;
@@ -98,4 +276,52 @@ public final class BlockingUploadParser extends AbstractUploadParser {
             }
         }
     }
+
+    /**
+     * Reads everything from the channel in a blocking mode. It will
+     * throw an exception if the data is malformed, for example
+     * it is not closed with the proper characters.
+     * @param channel The channel to read
+     * @throws IOException If an error occurred with the I/O
+     */
+    private void blockingRead(final ReadableByteChannel channel) throws IOException {
+        while (true) {
+            dataBuffer.clear();
+            final var count = channel.read(dataBuffer);
+            if (count == -1) {
+                if (parseState.isComplete()) {
+                    break;
+                } else {
+                    throw new MultipartException("Stream ended unexpectedly!");
+                }
+            } else if (count > 0) {
+                checkRequestSize(count);
+                dataBuffer.flip();
+                parseState.parse(dataBuffer);
+            }
+        }
+    }
+
+    /**
+     * Parses the given buffers, one after the other.
+     * @param buffers The buffers to parse
+     * @throws IOException If an error occurred with the I/O
+     */
+    private void parseBuffers(final Iterable<? extends ByteBuffer> buffers) throws IOException {
+        for (final ByteBuffer buffer : buffers) {
+            checkRequestSize(buffer.remaining());
+            parseState.parse(buffer);
+        }
+        if (!parseState.isComplete()) {
+            throw new MultipartException("Stream ended unexpectedly!");
+        }
+    }
+
+    /**
+     * Reads the data of the request, throwing the same exceptions as the parser.
+     */
+    @FunctionalInterface
+    private interface BlockingReader {
+        void read() throws IOException;
+    }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+/**
+ * Locates the positions in a byte array where the multipart boundary
+ * could begin. The parser uses it to skip over the body bytes which
+ * cannot be part of a boundary, only the bytes from the returned position
+ * have to be checked byte by byte.
+ *
+ * <p>The implementation based on the Vector API is only compiled if the
+ * build was run with {@code -PvectorScanner}, because it depends on an
+ * incubator module. It is loaded reflectively and only used if the
+ * application was also started with {@code --add-modules jdk.incubator.vector}.
+ * Otherwise the Horspool implementation is used.</p>
+ */
+@FunctionalInterface
+interface BoundaryScanner {
+
+    /**
+     * The name of the module containing the Vector API.
+     */
+    String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * The name of the factory class for the scanner using the Vector API.
+     */
+    String VECTOR_FACTORY_CLASS = "com.github.elopteryx.upload.internal.VectorBoundaryScanner$Factory";
+
+    /**
+     * Returns the first index in the given range where the boundary could begin. No
+     * boundary, not even one which is cut off by the end of the range, can begin
+     * before the returned index.
+     * @param array The array to scan
+     * @param from The start index, inclusive
+     * @param to The end index, exclusive
+     * @return The index of the first candidate or the end index if there is none
+     */
+    int indexOf(byte[] array, int from, int to);
+
+    /**
+     * Creates a new scanner for the given boundary, using the fastest available algorithm.
+     * @param boundary The boundary, complete with the initial CRLF--
+     * @return A new scanner instance
+     */
+    static BoundaryScanner of(final byte[] boundary) {
+        return Support.VECTOR_FACTORY == null ? Algorithm.HORSPOOL.create(boundary) : Algorithm.VECTOR.create(boundary);
+    }
+
+    /**
+     * The available scanning algorithms.
+     */
+    enum Algorithm {
+        /**
+         * Does not skip anything, every byte is checked by the parser.
+         */
+        NONE,
+        /**
+         * Checks one byte at a time for the first two bytes of the boundary.
+         */
+        SCALAR,
+        /**
+         * Checks a full vector at a time for the first two bytes of the boundary.
+         * Same as {@link #SCALAR} if the Vector API is not available.
+         */
+        VECTOR,
+        /**
+         * Searches for the full boundary with a precomputed skip table.
+         */
+        HORSPOOL;
+
+        /**
+         * Creates a new scanner for the given boundary.
+         * @param boundary The boundary, complete with the initial CRLF--
+         * @return A new scanner instance
+         */
+        BoundaryScanner create(final byte[] boundary) {
+            return switch (this) {
+                case NONE -> (array, from, to) -> from;
+                case SCALAR -> new ScalarBoundaryScanner(boundary[0], boundary[1]);
+                case VECTOR -> Support.VECTOR_FACTORY == null
+                        ? new ScalarBoundaryScanner(boundary[0], boundary[1])
+                        : Support.VECTOR_FACTORY.create(boundary[0], boundary[1]);
+                case HORSPOOL -> HorspoolBoundaryScanner.of(boundary);
+            };
+        }
+    }
+
+    /**
+     * Creates the scanners of an implementation which is loaded reflectively.
+     */
+    interface Factory {
+
+        /**
+         * Returns whether the implementation should be used on this platform.
+         * @return True if the implementation is faster than the scalar one
+         */
+        boolean isSupported();
+
+        /**
+         * Creates a new scanner for the given first two bytes of the boundary.
+         * @param first The first byte of the boundary
+         * @param second The second byte of the boundary
+         * @return A new scanner instance
+         */
+        BoundaryScanner create(byte first, byte second);
+    }
+
+    /**
+     * Holder for the lazily loaded implementation using the Vector API.
+     */
+    final class Support {
+
+        /**
+         * The factory for the scanner using the Vector API, null if it cannot be used.
+         */
+        static final Factory VECTOR_FACTORY = loadVectorFactory();
+
+        private Support() {
+            // No need to instantiate
+        }
+
+        /**
+         * Loads the factory if the incubator module is present and the class was compiled.
+         * The module of the parser does not require the incubator module, so it must
+         * be made readable before the class is linked.
+         * @return The factory or null if the Vector API cannot be used
+         */
+        private static Factory loadVectorFactory() {
+            final var vectorModule = ModuleLayer.boot().findModule(VECTOR_MODULE);
+            if (vectorModule.isEmpty()) {
+                return null;
+            }
+            try {
+                BoundaryScanner.class.getModule().addReads(vectorModule.get());
+                final var type = Class.forName(VECTOR_FACTORY_CLASS, true, BoundaryScanner.class.getClassLoader());
+                final var factory = (Factory) type.getDeclaredConstructor().newInstance();
+                return factory.isSupported() ? factory : null;
+            } catch (final ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+    }
+}
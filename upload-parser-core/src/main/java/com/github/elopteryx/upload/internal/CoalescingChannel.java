@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Collects the small writes into a buffer before passing them to the wrapped channel.
+ * The parser can emit slices of a few bytes, for example around the boundaries or
+ * when decoding, each of which would be a separate write otherwise. If the wrapped
+ * channel supports gathering writes then the buffered and the new data are written
+ * with one call. The remaining data is written when the channel is closed.
+ */
+final class CoalescingChannel implements WritableByteChannel {
+
+    /**
+     * The channel which receives the data.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The buffer collecting the data, in write mode.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The sources of the gathering writes, reused between them.
+     */
+    private final ByteBuffer[] sources;
+
+    /**
+     * Creates a new instance.
+     * @param channel The wrapped channel
+     * @param buffer The buffer to collect the data into
+     */
+    CoalescingChannel(final WritableByteChannel channel, final ByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer.clear();
+        this.sources = channel instanceof GatheringByteChannel ? new ByteBuffer[2] : null;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        final var count = src.remaining();
+        if (count <= buffer.remaining()) {
+            buffer.put(src);
+            return count;
+        }
+        if (sources != null && buffer.position() > 0) {
+            buffer.flip();
+            sources[0] = buffer;
+            sources[1] = src;
+            try {
+                while (buffer.hasRemaining()) {
+                    ((GatheringByteChannel) channel).write(sources);
+                }
+            } finally {
+                sources[1] = null;
+            }
+            buffer.clear();
+        } else {
+            drain();
+        }
+        if (src.remaining() < buffer.capacity()) {
+            buffer.put(src);
+        } else {
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the collected data to the wrapped channel.
+     * @throws IOException If an error occurred with the channel
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
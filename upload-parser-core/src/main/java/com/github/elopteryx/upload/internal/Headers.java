@@ -16,23 +16,28 @@
 
 package com.github.elopteryx.upload.internal;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Locale;
-import java.util.Map;
 
 /**
  * This class is used to extract, store and retrieve header keys
  * and values. Supports the HTTP request headers and also the headers
  * for the part items received in the multipart request.
+ *
+ * <p>The part headers are kept as the raw bytes received by the parser,
+ * the names and values are only decoded when they are first accessed.</p>
  */
 public class Headers {
 
     private static final String BOUNDARY = "boundary";
 
+    private static final String CHARSET = "charset";
+
     public static final String CONTENT_DISPOSITION = "Content-Disposition";
 
     public static final String CONTENT_ENCODING = "Content-Encoding";
@@ -41,21 +46,135 @@ public class Headers {
 
     public static final String CONTENT_TYPE = "Content-Type";
 
-    private final Map<String, List<String>> headerNameToValueListMap = new LinkedHashMap<>();
+    /**
+     * The lower case names of the well known part headers. The header names
+     * are matched against these, to avoid creating new strings for them.
+     */
+    private static final String[] KNOWN_NAMES = {
+        "content-disposition", "content-type", "content-transfer-encoding", "content-length", "content-encoding"
+    };
+
+    /**
+     * The bytes of the well known names, in the same order.
+     */
+    private static final byte[][] KNOWN_NAME_BYTES;
+
+    /**
+     * The initial capacity of the arrays, enough for the usual part headers.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * The number of offsets stored for each header: the start and end of the name and the value.
+     */
+    private static final int OFFSETS_PER_HEADER = 4;
+
+    static {
+        KNOWN_NAME_BYTES = new byte[KNOWN_NAMES.length][];
+        for (var i = 0; i < KNOWN_NAMES.length; i++) {
+            KNOWN_NAME_BYTES[i] = KNOWN_NAMES[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * The raw bytes of the header lines, as received by the parser.
+     */
+    private final byte[] bytes;
+
+    /**
+     * The positions of the names and values in the raw bytes.
+     */
+    private final int[] offsets;
+
+    /**
+     * The charset used to decode the raw bytes.
+     */
+    private final Charset charset;
+
+    /**
+     * The decoded lower case header names, in the order they were added.
+     * Repeated headers have one entry for each value. Filled on first access.
+     */
+    private String[] names;
+
+    /**
+     * The decoded header values, in the same order as the names. Filled on first access.
+     */
+    private String[] values;
+
+    /**
+     * The number of the stored headers.
+     */
+    private int size;
+
+    /**
+     * Creates an empty instance, the headers can be added as strings.
+     */
+    Headers() {
+        this(new byte[0], new int[0], 0, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Creates an instance backed by the raw header bytes. Nothing is decoded
+     * until the headers are accessed.
+     * @param bytes The raw bytes of the header lines
+     * @param offsets The start and end of the name, then the start and end of the value for each header
+     * @param size The number of headers
+     * @param charset The charset of the bytes
+     */
+    Headers(final byte[] bytes, final int[] offsets, final int size, final Charset charset) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.size = size;
+        this.charset = charset;
+    }
 
     String getHeader(final String name) {
-        final var nameLower = name.toLowerCase(Locale.ENGLISH);
-        final var headerValueList = headerNameToValueListMap.get(nameLower);
-        return headerValueList == null ? null : headerValueList.get(0);
+        final var index = indexOf(name, 0);
+        return index == -1 ? null : value(index);
     }
 
     Collection<String> getHeaders(final String name) {
-        final var nameLower = name.toLowerCase(Locale.ENGLISH);
-        return headerNameToValueListMap.getOrDefault(nameLower, Collections.emptyList());
+        final var headerValues = new ArrayList<String>();
+        for (var index = indexOf(name, 0); index != -1; index = indexOf(name, index + 1)) {
+            headerValues.add(value(index));
+        }
+        return headerValues;
     }
 
     Collection<String> getHeaderNames() {
-        return headerNameToValueListMap.keySet();
+        final var headerNames = new LinkedHashSet<String>();
+        for (var i = 0; i < size; i++) {
+            headerNames.add(name(i));
+        }
+        return headerNames;
+    }
+
+    /**
+     * Returns whether the first value of the given header starts with the given
+     * ASCII prefix. Compares the raw bytes, the value is not decoded.
+     * @param name The header name
+     * @param prefix The prefix to look for
+     * @return True if the header is present and starts with the prefix
+     */
+    boolean headerStartsWith(final String name, final String prefix) {
+        final var index = indexOf(name, 0);
+        if (index == -1) {
+            return false;
+        } else if (values != null && values[index] != null) {
+            return values[index].startsWith(prefix);
+        }
+        final var start = offsets[index * OFFSETS_PER_HEADER + 2];
+        final var end = offsets[index * OFFSETS_PER_HEADER + 3];
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (var i = 0; i < prefix.length(); i++) {
+            if (bytes[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -65,8 +184,125 @@ public class Headers {
      * @param value value of this header
      */
     void addHeader(final String name, final String value) {
-        final var nameLower = name.toLowerCase(Locale.ENGLISH);
-        headerNameToValueListMap.computeIfAbsent(nameLower, key -> new ArrayList<>()).add(value);
+        if (names == null) {
+            names = new String[Math.max(size * 2, INITIAL_CAPACITY)];
+            values = new String[names.length];
+        } else if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = toLowerCase(name);
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Returns the index of the next header with the given name.
+     * @param name The header name, in any case
+     * @param from The index to start from
+     * @return The index, or -1 if there is no such header
+     */
+    private int indexOf(final String name, final int from) {
+        final var nameLower = toLowerCase(name);
+        for (var i = from; i < size; i++) {
+            if (nameEquals(i, nameLower)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(final int index, final String nameLower) {
+        if (names != null && names[index] != null) {
+            return names[index].equals(nameLower);
+        }
+        final var start = offsets[index * OFFSETS_PER_HEADER];
+        final var end = offsets[index * OFFSETS_PER_HEADER + 1];
+        if (end - start != nameLower.length()) {
+            return false;
+        }
+        for (var i = 0; i < nameLower.length(); i++) {
+            final var b = bytes[start + i];
+            if (b < 0) {
+                // Not ASCII, compare the decoded name instead
+                return name(index).equals(nameLower);
+            } else if ((b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b) != nameLower.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String name(final int index) {
+        if (names == null) {
+            names = new String[size];
+            values = new String[size];
+        }
+        if (names[index] == null) {
+            final var start = offsets[index * OFFSETS_PER_HEADER];
+            final var end = offsets[index * OFFSETS_PER_HEADER + 1];
+            final var knownName = knownName(bytes, start, end);
+            names[index] = knownName == null ? new String(bytes, start, end - start, charset).toLowerCase(Locale.ENGLISH) : knownName;
+        }
+        return names[index];
+    }
+
+    private String value(final int index) {
+        if (values == null) {
+            names = new String[size];
+            values = new String[size];
+        }
+        if (values[index] == null) {
+            final var start = offsets[index * OFFSETS_PER_HEADER + 2];
+            final var end = offsets[index * OFFSETS_PER_HEADER + 3];
+            values[index] = new String(bytes, start, end - start, charset);
+        }
+        return values[index];
+    }
+
+    /**
+     * Returns the lower case version of the given header name. The well
+     * known names are returned without creating a new string.
+     * @param name The header name
+     * @return The lower case name
+     */
+    private static String toLowerCase(final String name) {
+        for (final String knownName : KNOWN_NAMES) {
+            if (knownName.equalsIgnoreCase(name)) {
+                return knownName;
+            }
+        }
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Matches the given header name bytes against the well known header names,
+     * ignoring the case of the letters.
+     * @param array The array containing the name
+     * @param start The index of the first byte of the name
+     * @param end The index after the last byte of the name
+     * @return The lower case name, or null if it is not a well known one
+     */
+    static String knownName(final byte[] array, final int start, final int end) {
+        for (var i = 0; i < KNOWN_NAME_BYTES.length; i++) {
+            if (equalsIgnoreCase(KNOWN_NAME_BYTES[i], array, start, end)) {
+                return KNOWN_NAMES[i];
+            }
+        }
+        return null;
+    }
+
+    private static boolean equalsIgnoreCase(final byte[] lowerCase, final byte[] array, final int start, final int end) {
+        if (lowerCase.length != end - start) {
+            return false;
+        }
+        for (var i = 0; i < lowerCase.length; i++) {
+            final var b = array[start + i];
+            if ((b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b) != lowerCase[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -78,13 +314,33 @@ public class Headers {
      * @return The token, or null if it was not found
      */
     public static String extractBoundaryFromHeader(final String header) {
+        return extractTokenFromHeader(header, BOUNDARY);
+    }
+
+    /**
+     * Extracts the charset from a content type header. For instance if the header is
+     * content-type=multipart/form-data; charset=UTF-8; boundary=myboundary
+     * then UTF-8 will be returned.
+     *
+     * @param header The header
+     * @return The charset, or null if it was not found
+     */
+    public static String extractCharsetFromHeader(final String header) {
+        final var charset = extractTokenFromHeader(header, CHARSET);
+        if (charset != null && charset.length() > 1 && charset.charAt(0) == '"' && charset.charAt(charset.length() - 1) == '"') {
+            return charset.substring(1, charset.length() - 1);
+        }
+        return charset;
+    }
+
+    private static String extractTokenFromHeader(final String header, final String key) {
 
-        final var pos = header.indexOf(BOUNDARY + '=');
+        final var pos = header.indexOf(key + '=');
         if (pos == -1) {
             return null;
         }
         int end;
-        final var start = pos + BOUNDARY.length() + 1;
+        final var start = pos + key.length() + 1;
         for (end = start; end < header.length(); ++end) {
             final var character = header.charAt(end);
             if (character == ' ' || character == '\t' || character == ';') {
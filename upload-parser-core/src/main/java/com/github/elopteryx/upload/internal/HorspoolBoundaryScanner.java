@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Implementation of {@link BoundaryScanner} using the Boyer-Moore-Horspool
+ * algorithm. Compares the last byte of the window first and if it does not
+ * complete a match then jumps ahead by up to the length of the boundary.
+ *
+ * <p>Instances are immutable, the skip tables are cached per boundary, so
+ * clients sending the same boundary do not need to build them again. The
+ * cache is a fixed size table indexed by the hash of the boundary, a lookup
+ * neither locks nor allocates, a colliding boundary simply replaces the
+ * previous instance.</p>
+ */
+final class HorspoolBoundaryScanner implements BoundaryScanner {
+
+    /**
+     * The maximum number of cached instances, must be a power of two.
+     */
+    private static final int CACHE_SIZE = 64;
+
+    /**
+     * The cached instances, the slot of a boundary is determined by its hash.
+     */
+    private static final AtomicReferenceArray<HorspoolBoundaryScanner> CACHE = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    /**
+     * The boundary, complete with the initial CRLF--.
+     */
+    private final byte[] boundary;
+
+    /**
+     * The distance to jump for each byte value found at the end of the window.
+     */
+    private final int[] skipTable;
+
+    private HorspoolBoundaryScanner(final byte[] boundary) {
+        this.boundary = boundary.clone();
+        this.skipTable = new int[256];
+        final var last = boundary.length - 1;
+        Arrays.fill(skipTable, boundary.length);
+        for (var i = 0; i < last; i++) {
+            skipTable[boundary[i] & 0xFF] = last - i;
+        }
+    }
+
+    /**
+     * Returns the scanner for the given boundary, creating it if it is not cached.
+     * @param boundary The boundary, complete with the initial CRLF--
+     * @return The scanner instance
+     */
+    static HorspoolBoundaryScanner of(final byte[] boundary) {
+        final var slot = Arrays.hashCode(boundary) & (CACHE_SIZE - 1);
+        final var cached = CACHE.get(slot);
+        if (cached != null && Arrays.equals(cached.boundary, boundary)) {
+            return cached;
+        }
+        final var created = new HorspoolBoundaryScanner(boundary);
+        CACHE.set(slot, created);
+        return created;
+    }
+
+    @Override
+    public int indexOf(final byte[] array, final int from, final int to) {
+        final var last = boundary.length - 1;
+        final var lastByte = boundary[last];
+        var index = from;
+        while (index + last < to) {
+            final var current = array[index + last];
+            if (current == lastByte && matches(array, index)) {
+                return index;
+            }
+            index += skipTable[current & 0xFF];
+        }
+        // The skipped positions cannot even start a partial match, because the
+        // byte that determined the skip is inside the range
+        return index;
+    }
+
+    private boolean matches(final byte[] array, final int index) {
+        for (var i = 0; i < boundary.length - 1; i++) {
+            if (array[index + i] != boundary[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -20,10 +20,10 @@ package com.github.elopteryx.upload.internal;
 
 import com.github.elopteryx.upload.errors.MultipartException;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * Copied from Undertow. Made some refactoring to remove the
@@ -55,6 +55,16 @@ public final class MultipartParser {
     private static final byte[] BOUNDARY_PREFIX = {CR, LF, DASH, DASH};
 
     private static final String CONTENT_TRANSFER_ENCODING = "Content-Transfer-Encoding";
+
+    /**
+     * The initial size of the header storage, enough for the usual part headers.
+     */
+    private static final int HEADER_BLOCK_SIZE = 256;
+
+    /**
+     * The number of offsets stored for each header: the start and end of the name and the value.
+     */
+    private static final int OFFSETS_PER_HEADER = 4;
     
     private static final String ERROR_MESSAGE = "Invalid multipart request!";
 
@@ -63,7 +73,7 @@ public final class MultipartParser {
     }
 
     interface PartHandler {
-        void beginPart(Headers headers);
+        void beginPart(Headers headers) throws IOException;
 
         void data(ByteBuffer buffer) throws IOException;
 
@@ -79,12 +89,31 @@ public final class MultipartParser {
      * @return A new state object to allow calling the parser.
      */
     public static ParseState beginParse(final PartHandler handler, final byte[] boundary, final int bufferSize, final Charset requestCharset) {
+        final var boundaryToken = boundaryToken(boundary);
+        return new ParseState(handler, bufferSize, requestCharset, boundaryToken, BoundaryScanner.of(boundaryToken));
+    }
+
+    /**
+     * Begins parsing the multipart input with the given algorithm for finding the boundaries.
+     * @param handler The part handler, which is to be called at certain points.
+     * @param boundary The boundary value for the multipart stream.
+     * @param bufferSize The size of the buffer for the encoding handlers.
+     * @param requestCharset The charset of the input.
+     * @param algorithm The algorithm used to skip over the part bodies.
+     * @return A new state object to allow calling the parser.
+     */
+    static ParseState beginParse(final PartHandler handler, final byte[] boundary, final int bufferSize, final Charset requestCharset,
+                                 final BoundaryScanner.Algorithm algorithm) {
+        final var boundaryToken = boundaryToken(boundary);
+        return new ParseState(handler, bufferSize, requestCharset, boundaryToken, algorithm.create(boundaryToken));
+    }
 
+    private static byte[] boundaryToken(final byte[] boundary) {
         // We prepend CR/LF to the boundary to chop trailing CR/LF from body-data tokens.
         final var boundaryToken = new byte[boundary.length + BOUNDARY_PREFIX.length];
         System.arraycopy(BOUNDARY_PREFIX, 0, boundaryToken, 0, BOUNDARY_PREFIX.length);
         System.arraycopy(boundary, 0, boundaryToken, BOUNDARY_PREFIX.length, boundary.length);
-        return new ParseState(handler, bufferSize, requestCharset, boundaryToken);
+        return boundaryToken;
     }
 
     static class ParseState {
@@ -97,13 +126,49 @@ public final class MultipartParser {
          */
         private final byte[] boundary;
 
+        /**
+         * Used to skip over the bytes which cannot start a boundary.
+         */
+        private final BoundaryScanner boundaryScanner;
+
         // 0=preamble
         private int state;
         private int subState = Integer.MAX_VALUE; // used for preamble parsing
-        private ByteArrayOutputStream currentString;
-        private String currentHeaderName;
-        private Headers headers;
+        /**
+         * Reusable storage for the header lines of the current part, each
+         * name is followed by the value without the separator.
+         */
+        private byte[] headerBytes = new byte[HEADER_BLOCK_SIZE];
+        private int headerLength;
+        /**
+         * The start of the current line and the end of its name in the header storage.
+         */
+        private int lineStart;
+        private int nameEnd;
+        /**
+         * The positions of the trimmed names and values in the header storage.
+         */
+        private int[] headerOffsets = new int[OFFSETS_PER_HEADER * 4];
+        private int headerCount;
         private Encoding encodingHandler;
+        /**
+         * The buffer for the decoded data, shared by the parts, as only one is decoded at a time.
+         */
+        private ByteBuffer encodingBuffer;
+        /**
+         * The decoders, created for the first part needing them and reused by the following ones.
+         */
+        private Base64Encoding base64Encoding;
+        private QuotedPrintableEncoding quotedPrintableEncoding;
+        private boolean strictQuotedPrintable;
+        /**
+         * Whether the current parse call should return early, see {@link #pause()}.
+         */
+        private boolean paused;
+        /**
+         * Whether the rest of the current part body is skipped, see {@link #skipPart()}.
+         */
+        private boolean skipping;
 
         /**
          * Public constructor.
@@ -111,12 +176,32 @@ public final class MultipartParser {
          * @param requestCharset The charset of the input.
          * @param bufferSize The size of the allocated buffer.
          * @param boundary The boundary value for the multipart stream.
+         * @param boundaryScanner The scanner used to skip over the part bodies.
          */
-        ParseState(final PartHandler partHandler, final int bufferSize, final Charset requestCharset, final byte[] boundary) {
+        ParseState(final PartHandler partHandler, final int bufferSize, final Charset requestCharset, final byte[] boundary, final BoundaryScanner boundaryScanner) {
             this.partHandler = partHandler;
             this.requestCharset = requestCharset;
             this.bufferSize = bufferSize;
             this.boundary = boundary;
+            this.boundaryScanner = boundaryScanner;
+        }
+
+        /**
+         * Sets whether the malformed escape sequences in the quoted-printable
+         * parts should fail the parsing, by default they are kept as they are.
+         * @param strictQuotedPrintable The flag value
+         */
+        void setStrictQuotedPrintable(final boolean strictQuotedPrintable) {
+            this.strictQuotedPrintable = strictQuotedPrintable;
+        }
+
+        /**
+         * Sets the buffer used by the decoding of the parts, its capacity must be
+         * the buffer size. By default it is allocated when it is first needed.
+         * @param encodingBuffer The buffer to use
+         */
+        void setEncodingBuffer(final ByteBuffer encodingBuffer) {
+            this.encodingBuffer = encodingBuffer;
         }
 
         /**
@@ -125,7 +210,12 @@ public final class MultipartParser {
          * @throws IOException If an error occurred with the I/O
          */
         void parse(final ByteBuffer buffer) throws IOException {
-            while (buffer.hasRemaining()) {
+            paused = false;
+            if (buffer.hasArray()) {
+                parseArray(buffer);
+                return;
+            }
+            while (buffer.hasRemaining() && !paused) {
                 switch (state) {
                     case 0 -> preamble(buffer);
                     case 1 -> headerName(buffer);
@@ -139,6 +229,239 @@ public final class MultipartParser {
             }
         }
 
+        /**
+         * Makes the current parse call return after the current part has ended, before
+         * the headers of the next part are processed. The unprocessed data is left in the buffer,
+         * the caller must pass it again to continue. Called by the part handler from {@link PartHandler#endPart()}.
+         */
+        void pause() {
+            paused = true;
+        }
+
+        /**
+         * Makes the parser skip the rest of the current part body, only looking for the next boundary.
+         * The data is neither decoded nor passed to the part handler, the part still ends with
+         * {@link PartHandler#endPart()}. Called by the part handler, the data already decoded is still passed.
+         */
+        void skipPart() {
+            skipping = true;
+        }
+
+        /**
+         * Parses the given data, working directly on the backing array. The position
+         * of the buffer is only updated once, at the end of the call.
+         * @param buffer The buffer containing new data to process, must have an accessible array
+         * @throws IOException If an error occurred with the I/O
+         */
+        private void parseArray(final ByteBuffer buffer) throws IOException {
+            final var array = buffer.array();
+            final var offset = buffer.arrayOffset();
+            final var limit = offset + buffer.limit();
+            var index = offset + buffer.position();
+            while (index < limit && state != -1 && !paused) {
+                index = switch (state) {
+                    case 0 -> preamble(array, index, limit);
+                    case 1 -> headerName(array, index, limit);
+                    case 2 -> headerValue(array, index, limit);
+                    case 3 -> entity(array, index, limit);
+                    default -> throw new IllegalStateException(String.valueOf(state));
+                };
+            }
+            buffer.position(index - offset);
+        }
+
+        private int preamble(final byte[] array, int index, final int limit) {
+            while (index < limit) {
+                final var b = array[index++];
+                if (subState >= 0) {
+                    //handle the case of no preamble. In this case there is no CRLF
+                    if (subState == Integer.MAX_VALUE) {
+                        subState = boundary[2] == b ? 2 : 0;
+                    }
+                    if (b == boundary[subState]) {
+                        subState++;
+                        if (subState == boundary.length) {
+                            subState = -1;
+                        }
+                    } else if (b == boundary[0]) {
+                        subState = 1;
+                    } else {
+                        subState = 0;
+                    }
+                } else if (subState == -1) {
+                    if (b == CR) {
+                        subState = -2;
+                    }
+                } else if (subState == -2) {
+                    if (b == LF) {
+                        subState = 0;
+                        state = 1;//preamble is done
+                        resetHeaders();
+                        return index;
+                    } else {
+                        subState = -1;
+                    }
+                }
+            }
+            return index;
+        }
+
+        private int headerName(final byte[] array, int index, final int limit) throws IOException {
+            while (index < limit) {
+                final var b = array[index++];
+                if (b == ':') {
+                    if (headerLength == lineStart || subState != 0) {
+                        throw new MultipartException(ERROR_MESSAGE);
+                    } else {
+                        nameEnd = headerLength;
+                        subState = 0;
+                        state = 2;
+                        return index;
+                    }
+                } else if (b == CR) {
+                    if (headerLength == lineStart) {
+                        subState = 1;
+                    } else {
+                        throw new MultipartException(ERROR_MESSAGE);
+                    }
+                } else if (b == LF) {
+                    if (headerLength != lineStart || subState != 1) {
+                        throw new MultipartException(ERROR_MESSAGE);
+                    }
+                    beginEntity();
+                    return index;
+                } else {
+                    if (subState != 0) {
+                        throw new MultipartException(ERROR_MESSAGE);
+                    }
+                    //copy the rest of the name in one go
+                    final var start = index - 1;
+                    while (index < limit && array[index] != ':' && array[index] != CR && array[index] != LF) {
+                        index++;
+                    }
+                    appendToHeaderLine(array, start, index - start);
+                }
+            }
+            return index;
+        }
+
+        private int headerValue(final byte[] array, int index, final int limit) throws MultipartException {
+            while (index < limit) {
+                final var b = array[index++];
+                if (b == CR) {
+                    subState = 1;
+                } else if (b == LF) {
+                    if (subState != 1) {
+                        throw new MultipartException(ERROR_MESSAGE);
+                    }
+                    addHeader();
+                    state = 1;
+                    subState = 0;
+                    return index;
+                } else {
+                    if (subState != 0) {
+                        throw new MultipartException(ERROR_MESSAGE);
+                    }
+                    //copy the rest of the value in one go
+                    final var start = index - 1;
+                    while (index < limit && array[index] != CR && array[index] != LF) {
+                        index++;
+                    }
+                    appendToHeaderLine(array, start, index - start);
+                }
+            }
+            return index;
+        }
+
+        private int entity(final byte[] array, int index, final int limit) throws IOException {
+            var subState = this.subState;
+            var startingSubState = subState;
+            final var start = index;
+            while (index < limit) {
+                if (subState == 0) {
+                    //we are not inside a potential boundary match, skip to the next candidate position
+                    index = boundaryScanner.indexOf(array, index, limit);
+                    if (index == limit) {
+                        break;
+                    }
+                }
+                final var b = array[index++];
+                if (subState >= 0) {
+                    if (b == boundary[subState]) {
+                        //if we have a potential boundary match
+                        subState++;
+                        if (subState == boundary.length) {
+                            startingSubState = 0;
+                            //we have our data
+                            final var end = Math.max(index - boundary.length, start);
+                            if (!skipping) {
+                                encodingHandler.handle(partHandler, ByteBuffer.wrap(array, start, end - start));
+                            }
+                            finishEntity();
+                            partHandler.endPart();
+                            subState = -1;
+                        }
+                    } else if (b == boundary[0]) {
+                        //we started half way through a boundary, but it turns out we did not actually meet the boundary condition
+                        //so we call the part handler with our copy of the boundary data
+                        if (startingSubState > 0) {
+                            handle(ByteBuffer.wrap(boundary, 0, startingSubState));
+                            startingSubState = 0;
+                        }
+                        subState = 1;
+                    } else {
+                        //we started half way through a boundary, but it turns out we did not actually meet the boundary condition
+                        //so we call the part handler with our copy of the boundary data
+                        if (startingSubState > 0) {
+                            handle(ByteBuffer.wrap(boundary, 0, startingSubState));
+                            startingSubState = 0;
+                        }
+                        subState = 0;
+                    }
+                } else if (subState == -1) {
+                    if (b == CR) {
+                        subState = -2;
+                    } else if (b == DASH) {
+                        subState = -3;
+                    }
+                } else if (subState == -2) {
+                    if (b == LF) {
+                        //ok, we have our data
+                        this.subState = 0;
+                        state = 1;
+                        resetHeaders();
+                        return index;
+                    } else if (b == DASH) {
+                        subState = -3;
+                    } else {
+                        subState = -1;
+                    }
+                } else if (subState == -3) {
+                    if (b == DASH) {
+                        this.subState = subState;
+                        state = -1; //we are done
+                        return index;
+                    } else {
+                        subState = -1;
+                    }
+                }
+            }
+            this.subState = subState;
+            //handle the data we read so far
+            if (skipping) {
+                //the skipped data is not handled
+                return index;
+            }
+            if (subState == 0) {
+                //if we end partially through a boundary we do not handle the data
+                encodingHandler.handle(partHandler, ByteBuffer.wrap(array, start, index - start));
+            } else if (index - start > subState && subState > 0) {
+                //we have some data to handle, and the end of the buffer might be a boundary match
+                encodingHandler.handle(partHandler, ByteBuffer.wrap(array, start, index - start - subState));
+            }
+            return index;
+        }
+
         private void preamble(final ByteBuffer buffer) {
             while (buffer.hasRemaining()) {
                 final var b = buffer.get();
@@ -165,7 +488,7 @@ public final class MultipartParser {
                     if (b == LF) {
                         subState = 0;
                         state = 1;//preamble is done
-                        headers = new Headers();
+                        resetHeaders();
                         return;
                     } else {
                         subState = -1;
@@ -174,57 +497,116 @@ public final class MultipartParser {
             }
         }
 
-        private void headerName(final ByteBuffer buffer) throws MultipartException {
+        private void headerName(final ByteBuffer buffer) throws IOException {
             while (buffer.hasRemaining()) {
                 final var b = buffer.get();
                 if (b == ':') {
-                    if (currentString == null || subState != 0) {
+                    if (headerLength == lineStart || subState != 0) {
                         throw new MultipartException(ERROR_MESSAGE);
                     } else {
-                        currentHeaderName = currentString.toString(requestCharset);
-                        currentString.reset();
+                        nameEnd = headerLength;
                         subState = 0;
                         state = 2;
                         return;
                     }
                 } else if (b == CR) {
-                    if (currentString == null) {
+                    if (headerLength == lineStart) {
                         subState = 1;
                     } else {
                         throw new MultipartException(ERROR_MESSAGE);
                     }
                 } else if (b == LF) {
-                    if (currentString != null || subState != 1) {
+                    if (headerLength != lineStart || subState != 1) {
                         throw new MultipartException(ERROR_MESSAGE);
                     }
-                    state = 3;
-                    subState = 0;
-                    partHandler.beginPart(headers);
-                    //select the appropriate encoding
-                    final var encoding = headers.getHeader(CONTENT_TRANSFER_ENCODING);
-                    if (encoding == null) {
-                        encodingHandler = new IdentityEncoding();
-                    } else if ("base64".equalsIgnoreCase(encoding)) {
-                        encodingHandler = new Base64Encoding(bufferSize);
-                    } else if ("quoted-printable".equalsIgnoreCase(encoding)) {
-                        encodingHandler = new QuotedPrintableEncoding(bufferSize);
-                    } else {
-                        encodingHandler = new IdentityEncoding();
-                    }
-                    headers = null;
+                    beginEntity();
                     return;
-
                 } else {
                     if (subState != 0) {
                         throw new MultipartException(ERROR_MESSAGE);
-                    } else if (currentString == null) {
-                        currentString = new ByteArrayOutputStream();
                     }
-                    currentString.write(b);
+                    appendToHeaderLine(b);
                 }
             }
         }
 
+        private void appendToHeaderLine(final byte b) {
+            if (headerLength == headerBytes.length) {
+                headerBytes = Arrays.copyOf(headerBytes, headerLength * 2);
+            }
+            headerBytes[headerLength++] = b;
+        }
+
+        private void appendToHeaderLine(final byte[] array, final int start, final int length) {
+            if (headerLength + length > headerBytes.length) {
+                headerBytes = Arrays.copyOf(headerBytes, Math.max(headerBytes.length * 2, headerLength + length));
+            }
+            System.arraycopy(array, start, headerBytes, headerLength, length);
+            headerLength += length;
+        }
+
+        /**
+         * Records the position of the completed header line, then starts the next one.
+         * The name and the value are trimmed, but not decoded.
+         */
+        private void addHeader() {
+            if ((headerCount + 1) * OFFSETS_PER_HEADER > headerOffsets.length) {
+                headerOffsets = Arrays.copyOf(headerOffsets, headerOffsets.length * 2);
+            }
+            final var offset = headerCount * OFFSETS_PER_HEADER;
+            headerOffsets[offset] = trimStart(headerBytes, lineStart, nameEnd);
+            headerOffsets[offset + 1] = trimEnd(headerBytes, headerOffsets[offset], nameEnd);
+            headerOffsets[offset + 2] = trimStart(headerBytes, nameEnd, headerLength);
+            headerOffsets[offset + 3] = trimEnd(headerBytes, headerOffsets[offset + 2], headerLength);
+            headerCount++;
+            lineStart = headerLength;
+        }
+
+        private void resetHeaders() {
+            headerLength = 0;
+            lineStart = 0;
+            headerCount = 0;
+        }
+
+        /**
+         * Called after the empty line closing the part headers, notifies the
+         * handler and selects the encoding for the part body.
+         * @throws IOException If the handler failed
+         */
+        private void beginEntity() throws IOException {
+            state = 3;
+            subState = 0;
+            skipping = false;
+            final var headers = new Headers(Arrays.copyOf(headerBytes, headerLength),
+                    Arrays.copyOf(headerOffsets, headerCount * OFFSETS_PER_HEADER), headerCount, requestCharset);
+            resetHeaders();
+            partHandler.beginPart(headers);
+            //select the appropriate encoding
+            final var encoding = headers.getHeader(CONTENT_TRANSFER_ENCODING);
+            if (encoding == null) {
+                encodingHandler = IdentityEncoding.INSTANCE;
+            } else if ("base64".equalsIgnoreCase(encoding)) {
+                if (base64Encoding == null) {
+                    base64Encoding = new Base64Encoding(encodingBuffer());
+                }
+                encodingHandler = base64Encoding;
+            } else if ("quoted-printable".equalsIgnoreCase(encoding)) {
+                if (quotedPrintableEncoding == null) {
+                    quotedPrintableEncoding = new QuotedPrintableEncoding(encodingBuffer(), strictQuotedPrintable);
+                }
+                encodingHandler = quotedPrintableEncoding;
+            } else {
+                encodingHandler = IdentityEncoding.INSTANCE;
+            }
+        }
+
+        private ByteBuffer encodingBuffer() {
+            if (encodingBuffer == null) {
+                encodingBuffer = ByteBuffer.allocate(bufferSize);
+            }
+            return encodingBuffer.clear();
+        }
+
         private void headerValue(final ByteBuffer buffer) throws MultipartException {
             while (buffer.hasRemaining()) {
                 final var b = buffer.get();
@@ -234,16 +616,15 @@ public final class MultipartParser {
                     if (subState != 1) {
                         throw new MultipartException(ERROR_MESSAGE);
                     }
-                    headers.addHeader(currentHeaderName.trim(), currentString.toString(requestCharset).trim());
+                    addHeader();
                     state = 1;
                     subState = 0;
-                    currentString = null;
                     return;
                 } else {
                     if (subState != 0) {
                         throw new MultipartException(ERROR_MESSAGE);
                     }
-                    currentString.write(b);
+                    appendToHeaderLine(b);
                 }
             }
         }
@@ -264,7 +645,8 @@ public final class MultipartParser {
                             retBuffer.position(pos);
 
                             retBuffer.limit(Math.max(buffer.position() - boundary.length, 0));
-                            encodingHandler.handle(partHandler, retBuffer);
+                            handle(retBuffer);
+                            finishEntity();
                             partHandler.endPart();
                             subState = -1;
                         }
@@ -272,7 +654,7 @@ public final class MultipartParser {
                         //we started half way through a boundary, but it turns out we did not actually meet the boundary condition
                         //so we call the part handler with our copy of the boundary data
                         if (startingSubState > 0) {
-                            encodingHandler.handle(partHandler, ByteBuffer.wrap(boundary, 0, startingSubState));
+                            handle(ByteBuffer.wrap(boundary, 0, startingSubState));
                             startingSubState = 0;
                         }
                         subState = 1;
@@ -280,7 +662,7 @@ public final class MultipartParser {
                         //we started half way through a boundary, but it turns out we did not actually meet the boundary condition
                         //so we call the part handler with our copy of the boundary data
                         if (startingSubState > 0) {
-                            encodingHandler.handle(partHandler, ByteBuffer.wrap(boundary, 0, startingSubState));
+                            handle(ByteBuffer.wrap(boundary, 0, startingSubState));
                             startingSubState = 0;
                         }
                         subState = 0;
@@ -296,7 +678,7 @@ public final class MultipartParser {
                         //ok, we have our data
                         subState = 0;
                         state = 1;
-                        headers = new Headers();
+                        resetHeaders();
                         return;
                     } else if (b == DASH) {
                         subState = -3;
@@ -317,11 +699,34 @@ public final class MultipartParser {
             retBuffer.position(pos);
             if (subState == 0) {
                 //if we end partially through a boundary we do not handle the data
-                encodingHandler.handle(partHandler, retBuffer);
+                handle(retBuffer);
             } else if (retBuffer.remaining() > subState && subState > 0) {
                 //we have some data to handle, and the end of the buffer might be a boundary match
                 retBuffer.limit(retBuffer.limit() - subState);
-                encodingHandler.handle(partHandler, retBuffer);
+                handle(retBuffer);
+            }
+        }
+
+        /**
+         * Passes the raw data of the part body to the encoding, unless the part is skipped.
+         * @param rawData The data to handle
+         * @throws IOException If an error occurred with the I/O
+         */
+        private void handle(final ByteBuffer rawData) throws IOException {
+            if (!skipping) {
+                encodingHandler.handle(partHandler, rawData);
+            }
+        }
+
+        /**
+         * Passes the data still buffered by the encoding, or drops it if the part is skipped.
+         * @throws IOException If an error occurred with the I/O
+         */
+        private void finishEntity() throws IOException {
+            if (skipping) {
+                encodingHandler.reset();
+            } else {
+                encodingHandler.finish(partHandler);
             }
         }
 
@@ -331,12 +736,55 @@ public final class MultipartParser {
     }
 
 
+    /**
+     * Returns the index of the first byte in the range which is not
+     * whitespace or a control character, like {@link String#trim()}.
+     */
+    private static int trimStart(final byte[] array, int start, final int end) {
+        while (start < end && (array[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Returns the index after the last byte in the range which is not
+     * whitespace or a control character, like {@link String#trim()}.
+     */
+    private static int trimEnd(final byte[] array, final int start, int end) {
+        while (end > start && (array[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
     interface Encoding {
         void handle(PartHandler handler, ByteBuffer rawData) throws IOException;
+
+        /**
+         * Called at the end of the part, passes the data which is still buffered to the handler.
+         * @param handler The part handler
+         * @throws IOException If an error occurred with the I/O
+         */
+        default void finish(PartHandler handler) throws IOException {
+            // Nothing is buffered by default
+        }
+
+        /**
+         * Called at the end of a skipped part, drops the buffered data and the decoding state.
+         */
+        default void reset() {
+            // Nothing is buffered by default
+        }
     }
 
     static class IdentityEncoding implements Encoding {
 
+        /**
+         * The shared instance, the encoding has no state.
+         */
+        static final IdentityEncoding INSTANCE = new IdentityEncoding();
+
         @Override
         public void handle(final PartHandler handler, final ByteBuffer rawData) throws IOException {
             handler.data(rawData);
@@ -350,13 +798,38 @@ public final class MultipartParser {
 
         private final ByteBuffer buffer;
 
+        /**
+         * Creates the encoding. The buffer can hold the decoded form of the given
+         * number of characters, so the data read at once is decoded in one pass.
+         * @param size The size of the data buffer of the parser
+         */
         Base64Encoding(final int size) {
-            buffer = ByteBuffer.allocate(size);
+            this(ByteBuffer.allocate((size + 3) / 4 * 3));
+        }
+
+        /**
+         * Creates the encoding with a buffer provided by the parser. If it is at least as
+         * large as the encoded data then that is decoded in one pass.
+         * @param buffer The buffer for the decoded data
+         */
+        Base64Encoding(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void finish(final PartHandler handler) {
+            reset();
+        }
+
+        @Override
+        public void reset() {
+            decoder.reset();
         }
 
         @Override
         public void handle(final PartHandler handler, final ByteBuffer rawData) throws IOException {
             try {
+                //only loops if the data is larger than the data buffer
                 do {
                     buffer.clear();
                     decoder.decode(rawData, buffer);
@@ -369,59 +842,181 @@ public final class MultipartParser {
         }
     }
 
+    /**
+     * Decodes quoted-printable part bodies. The literal runs between the escape
+     * sequences are copied in bulk, the decoded data is passed to the handler
+     * when the buffer is full and at the end of the part.
+     */
     static class QuotedPrintableEncoding implements Encoding {
 
-        boolean equalsSeen;
-        byte firstCharacter;
+        /**
+         * Maps the hexadecimal digits to their values, all the other bytes to -1.
+         */
+        private static final byte[] HEX_TABLE = new byte[256];
+
+        static {
+            Arrays.fill(HEX_TABLE, (byte) -1);
+            for (var i = 0; i < 10; i++) {
+                HEX_TABLE['0' + i] = (byte) i;
+            }
+            for (var i = 0; i < 6; i++) {
+                HEX_TABLE['A' + i] = (byte) (10 + i);
+                HEX_TABLE['a' + i] = (byte) (10 + i);
+            }
+        }
 
         private final ByteBuffer buffer;
 
+        /**
+         * Whether a malformed escape sequence should fail the parsing
+         * or be passed through as it is.
+         */
+        private final boolean strict;
+
+        // 0=literal, 1=after '=', 2=after '=' and a digit
+        private int escapeState;
+        private byte firstDigit;
+
+        /**
+         * Used to read the data from buffers without an accessible array.
+         */
+        private byte[] scratch;
+
         QuotedPrintableEncoding(final int size) {
-            buffer = ByteBuffer.allocate(size);
+            this(size, false);
+        }
+
+        QuotedPrintableEncoding(final int size, final boolean strict) {
+            this(ByteBuffer.allocate(size), strict);
+        }
+
+        QuotedPrintableEncoding(final ByteBuffer buffer, final boolean strict) {
+            this.buffer = buffer;
+            this.strict = strict;
         }
 
         @Override
         public void handle(final PartHandler handler, final ByteBuffer rawData) throws IOException {
-            var equalsSeen = this.equalsSeen;
-            var firstCharacter = this.firstCharacter;
+            if (rawData.hasArray()) {
+                final var offset = rawData.arrayOffset();
+                decode(handler, rawData.array(), offset + rawData.position(), offset + rawData.limit());
+                rawData.position(rawData.limit());
+                return;
+            }
+            if (scratch == null) {
+                scratch = new byte[buffer.capacity()];
+            }
+            while (rawData.hasRemaining()) {
+                final var count = Math.min(rawData.remaining(), scratch.length);
+                rawData.get(scratch, 0, count);
+                decode(handler, scratch, 0, count);
+            }
+        }
+
+        @Override
+        public void finish(final PartHandler handler) throws IOException {
+            // A trailing '=' is a soft line break, the line ending belongs to the boundary
+            if (escapeState == 2) {
+                malformed();
+                write(handler, (byte) '=');
+                write(handler, firstDigit);
+            }
+            escapeState = 0;
+            if (buffer.position() > 0) {
+                flush(handler);
+            }
+        }
+
+        @Override
+        public void reset() {
+            escapeState = 0;
             buffer.clear();
-            try {
-                while (rawData.hasRemaining()) {
-                    final var readByte = rawData.get();
-                    if (equalsSeen) {
-                        if (firstCharacter == 0) {
-                            if (readByte == '\n' || readByte == '\r') {
-                                //soft line break
-                                //ignore
-                                equalsSeen = false;
-                            } else {
-                                firstCharacter = readByte;
-                            }
+        }
+
+        private void decode(final PartHandler handler, final byte[] source, int index, final int limit) throws IOException {
+            while (index < limit) {
+                if (escapeState == 0) {
+                    var end = index;
+                    while (end < limit && source[end] != '=') {
+                        end++;
+                    }
+                    write(handler, source, index, end - index);
+                    if (end < limit) {
+                        escapeState = 1;
+                        end++;
+                    }
+                    index = end;
+                    continue;
+                }
+                final var readByte = source[index++];
+                switch (escapeState) {
+                    case 1 -> {
+                        if (readByte == '\n' || readByte == '\r') {
+                            //soft line break
+                            escapeState = 0;
+                        } else if (HEX_TABLE[readByte & 0xFF] < 0) {
+                            malformed();
+                            write(handler, (byte) '=');
+                            escapeState = 0;
+                            index--;
                         } else {
-                            var result = Character.digit((char) firstCharacter, 16);
-                            result <<= 4; //shift it 4 bytes and then add the next value to the end
-                            result += Character.digit((char) readByte, 16);
-                            buffer.put((byte) result);
-                            equalsSeen = false;
-                            firstCharacter = 0;
+                            firstDigit = readByte;
+                            escapeState = 2;
                         }
-                    } else if (readByte == '=') {
-                        equalsSeen = true;
-                    } else {
-                        buffer.put(readByte);
-                        if (!buffer.hasRemaining()) {
-                            buffer.flip();
-                            handler.data(buffer);
-                            buffer.clear();
+                    }
+                    case 2 -> {
+                        final var secondDigit = HEX_TABLE[readByte & 0xFF];
+                        if (secondDigit < 0) {
+                            malformed();
+                            write(handler, (byte) '=');
+                            write(handler, firstDigit);
+                            index--;
+                        } else {
+                            write(handler, (byte) (HEX_TABLE[firstDigit] << 4 | secondDigit));
                         }
+                        escapeState = 0;
                     }
+                    default -> throw new IllegalStateException(String.valueOf(escapeState));
                 }
-                buffer.flip();
+            }
+        }
+
+        /**
+         * Called for the malformed escape sequences, which are written as they
+         * are, unless the encoding is strict.
+         * @throws MultipartException If the encoding is strict
+         */
+        private void malformed() throws MultipartException {
+            if (strict) {
+                throw new MultipartException("Malformed quoted-printable escape sequence!");
+            }
+        }
+
+        private void write(final PartHandler handler, final byte[] source, int offset, int length) throws IOException {
+            while (length > 0) {
+                final var count = Math.min(length, buffer.remaining());
+                buffer.put(source, offset, count);
+                offset += count;
+                length -= count;
+                if (!buffer.hasRemaining()) {
+                    flush(handler);
+                }
+            }
+        }
+
+        private void write(final PartHandler handler, final byte value) throws IOException {
+            buffer.put(value);
+            if (!buffer.hasRemaining()) {
+                flush(handler);
+            }
+        }
+
+        private void flush(final PartHandler handler) throws IOException {
+            buffer.flip();
+            try {
                 handler.data(buffer);
             } finally {
                 buffer.clear();
-                this.equalsSeen = equalsSeen;
-                this.firstCharacter = firstCharacter;
             }
         }
     }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.BufferPool;
+import com.github.elopteryx.upload.OnError;
+import com.github.elopteryx.upload.OnPartBegin;
+import com.github.elopteryx.upload.OnPartEnd;
+import com.github.elopteryx.upload.OnPartHeaders;
+import com.github.elopteryx.upload.OnRequestComplete;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.zip.Checksum;
+
+/**
+ * The settings of a compiled parser, as seen by the parser implementations. This is
+ * not part of the API, the package is not exported, the settings are only exposed this
+ * way so the compiled parser does not need public getters.
+ */
+public interface ParserSettings {
+
+    OnPartHeaders getPartHeadersCallback();
+
+    OnPartBegin getPartBeginCallback();
+
+    OnPartEnd getPartEndCallback();
+
+    OnRequestComplete getRequestCallback();
+
+    OnError getErrorCallback();
+
+    Object getUserObject();
+
+    int getMaxBytesUsed();
+
+    int getSizeThreshold();
+
+    long getMaxPartSize();
+
+    long getMaxRequestSize();
+
+    boolean isStrictQuotedPrintable();
+
+    BufferPool getBufferPool();
+
+    Executor getExecutor();
+
+    int getReadAheadBuffers();
+
+    boolean isAsyncFileWrites();
+
+    int getCoalescingSize();
+
+    boolean isDirectBuffers();
+
+    List<String> getDigestAlgorithms();
+
+    Map<String, Supplier<? extends Checksum>> getChecksums();
+}
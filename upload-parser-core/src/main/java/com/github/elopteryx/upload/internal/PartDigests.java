@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Checksum;
+
+/**
+ * Computes the configured digests and checksums over the data of the parts,
+ * as it is written to the outputs. The instances are created once for each
+ * request and reset at the beginning of each part.
+ */
+final class PartDigests {
+
+    /**
+     * The names of the digests and the digests.
+     */
+    private final String[] digestNames;
+    private final MessageDigest[] digests;
+
+    /**
+     * The names of the checksums and the checksums.
+     */
+    private final String[] checksumNames;
+    private final Checksum[] checksums;
+
+    private PartDigests(final ParserSettings settings) {
+        final var algorithms = settings.getDigestAlgorithms();
+        digestNames = algorithms.toArray(new String[0]);
+        digests = new MessageDigest[digestNames.length];
+        for (var i = 0; i < digestNames.length; i++) {
+            try {
+                digests[i] = MessageDigest.getInstance(digestNames[i]);
+            } catch (final NoSuchAlgorithmException e) {
+                // Checked when the algorithm was added
+                throw new IllegalStateException(e);
+            }
+        }
+        final var factories = settings.getChecksums();
+        checksumNames = factories.keySet().toArray(new String[0]);
+        checksums = new Checksum[checksumNames.length];
+        for (var i = 0; i < checksumNames.length; i++) {
+            checksums[i] = factories.get(checksumNames[i]).get();
+        }
+    }
+
+    /**
+     * Creates the digests of the request.
+     * @param settings The configuration
+     * @return A new instance or null if no digests are configured
+     */
+    static PartDigests create(final ParserSettings settings) {
+        if (settings.getDigestAlgorithms().isEmpty() && settings.getChecksums().isEmpty()) {
+            return null;
+        }
+        return new PartDigests(settings);
+    }
+
+    /**
+     * Prepares the digests for a new part.
+     */
+    void reset() {
+        for (final var digest : digests) {
+            digest.reset();
+        }
+        for (final var checksum : checksums) {
+            checksum.reset();
+        }
+    }
+
+    /**
+     * Updates the digests with the remaining data of the buffer. The position of the buffer
+     * is not changed.
+     * @param buffer The data being written
+     */
+    void update(final ByteBuffer buffer) {
+        final var position = buffer.position();
+        for (final var digest : digests) {
+            digest.update(buffer);
+            buffer.position(position);
+        }
+        for (final var checksum : checksums) {
+            checksum.update(buffer);
+            buffer.position(position);
+        }
+    }
+
+    /**
+     * Completes the digests and sets the results on the part.
+     * @param part The part which ended
+     */
+    void finish(final PartStreamImpl part) {
+        final Map<String, byte[]> digestValues = new HashMap<>();
+        for (var i = 0; i < digests.length; i++) {
+            digestValues.put(digestNames[i], digests[i].digest());
+        }
+        final Map<String, Long> checksumValues = new HashMap<>();
+        for (var i = 0; i < checksums.length; i++) {
+            checksumValues.put(checksumNames[i], checksums[i].getValue());
+        }
+        part.setDigests(digestValues, checksumValues);
+    }
+}
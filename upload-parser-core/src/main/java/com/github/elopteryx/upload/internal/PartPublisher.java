@@ -0,0 +1,517 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.AsyncWritableChannel;
+import com.github.elopteryx.upload.OnError;
+import com.github.elopteryx.upload.OnPartBegin;
+import com.github.elopteryx.upload.OnPartEnd;
+import com.github.elopteryx.upload.OnRequestComplete;
+import com.github.elopteryx.upload.PartOutput;
+import com.github.elopteryx.upload.PartStream;
+import com.github.elopteryx.upload.PublishedPart;
+import com.github.elopteryx.upload.UploadContext;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Publishes the parts of an async parsing. It replaces the callbacks of the parser, the body
+ * of each part is written to an asynchronous channel, whose writes complete when the data
+ * has been requested by the subscriber of the body. As the async parser stops reading while
+ * a write is in progress, the demand of the subscribers controls how far the request is read.
+ * The parser also waits until each part has been requested, before ending it.
+ *
+ * <p>The signals of each publisher are serialized with a drain loop, as the parser and the
+ * subscribers can call it from different threads.</p>
+ */
+public final class PartPublisher implements Flow.Publisher<PublishedPart>, Flow.Subscription,
+        OnPartBegin, OnPartEnd, OnRequestComplete, OnError {
+
+    /**
+     * The subscriber of the parts.
+     */
+    private Flow.Subscriber<? super PublishedPart> subscriber;
+
+    /**
+     * The number of parts requested, but not emitted yet.
+     */
+    private long demand;
+
+    /**
+     * The part which began, but has not been emitted yet.
+     */
+    private Part waitingPart;
+
+    /**
+     * The part which began last, its body may still be written.
+     */
+    private Part currentPart;
+
+    /**
+     * Whether the request has been parsed.
+     */
+    private boolean completed;
+
+    /**
+     * The error which ended the parsing.
+     */
+    private Throwable failure;
+
+    /**
+     * Whether the subscription was cancelled or a terminal signal was sent.
+     */
+    private boolean terminated;
+
+    /**
+     * The state of the drain loop.
+     */
+    private boolean draining;
+    private boolean missed;
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super PublishedPart> subscriber) {
+        final boolean accepted;
+        synchronized (this) {
+            accepted = this.subscriber == null;
+            if (accepted) {
+                this.subscriber = subscriber;
+            }
+        }
+        if (!accepted) {
+            rejectSubscriber(subscriber);
+            return;
+        }
+        subscriber.onSubscribe(this);
+        drain();
+    }
+
+    @Override
+    public void request(final long count) {
+        if (count <= 0) {
+            synchronized (this) {
+                if (failure == null) {
+                    failure = new IllegalArgumentException("The requested amount must be positive: " + count);
+                }
+            }
+            cancelPart(failure);
+        } else {
+            synchronized (this) {
+                demand = addDemand(demand, count);
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (this) {
+            terminated = true;
+            waitingPart = null;
+        }
+        cancelPart(new CancellationException("The subscription was cancelled!"));
+    }
+
+    /**
+     * Fails the current part, so that the parser does not wait for it anymore.
+     * @param throwable The reason
+     */
+    private void cancelPart(final Throwable throwable) {
+        final Part part;
+        synchronized (this) {
+            part = currentPart;
+        }
+        if (part != null) {
+            part.fail(throwable);
+        }
+    }
+
+    @Override
+    public PartOutput onPartBegin(final UploadContext context, final ByteBuffer buffer) {
+        final var part = new Part(context.getCurrentPart());
+        synchronized (this) {
+            currentPart = part;
+            if (!terminated) {
+                waitingPart = part;
+            }
+        }
+        if (isTerminated()) {
+            part.fail(new CancellationException("The subscription was cancelled!"));
+        }
+        drain();
+        return PartOutput.from(part.body);
+    }
+
+    @Override
+    public void onPartEnd(final UploadContext context) {
+        // The body was completed when the parser closed it
+    }
+
+    @Override
+    public void onRequestComplete(final UploadContext context) {
+        synchronized (this) {
+            completed = true;
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(final UploadContext context, final Throwable throwable) {
+        synchronized (this) {
+            if (failure == null) {
+                failure = throwable;
+            }
+        }
+        cancelPart(throwable);
+        drain();
+    }
+
+    private synchronized boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * Emits the waiting part and the terminal signals, as long as there is something to do.
+     */
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                missed = true;
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            Part part = null;
+            Throwable error = null;
+            var complete = false;
+            synchronized (this) {
+                if (subscriber == null || terminated) {
+                    draining = false;
+                    return;
+                }
+                if (failure != null) {
+                    error = failure;
+                    terminated = true;
+                } else if (waitingPart != null && demand > 0) {
+                    part = waitingPart;
+                    waitingPart = null;
+                    demand--;
+                } else if (waitingPart == null && completed) {
+                    complete = true;
+                    terminated = true;
+                } else if (missed) {
+                    missed = false;
+                    continue;
+                } else {
+                    draining = false;
+                    return;
+                }
+            }
+            if (part != null) {
+                subscriber.onNext(part);
+                part.emitted.complete(null);
+            } else if (error != null) {
+                subscriber.onError(error);
+            } else if (complete) {
+                subscriber.onComplete();
+            }
+        }
+    }
+
+    private static long addDemand(final long current, final long count) {
+        final var sum = current + count;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static void rejectSubscriber(final Flow.Subscriber<?> subscriber) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(final long count) {
+                // Nothing to emit
+            }
+
+            @Override
+            public void cancel() {
+                // Nothing to cancel
+            }
+        });
+        subscriber.onError(new IllegalStateException("The publisher only allows one subscriber!"));
+    }
+
+    /**
+     * A part and its body.
+     */
+    private static final class Part implements PublishedPart {
+
+        /**
+         * The part created by the parser.
+         */
+        private final PartStream part;
+
+        /**
+         * Completed when the part has been emitted.
+         */
+        private final CompletableFuture<Void> emitted = new CompletableFuture<>();
+
+        /**
+         * The publisher of the body, which the parser writes to.
+         */
+        private final Body body = new Body();
+
+        Part(final PartStream part) {
+            this.part = part;
+        }
+
+        @Override
+        public Flow.Publisher<ByteBuffer> getBody() {
+            return body;
+        }
+
+        void fail(final Throwable throwable) {
+            emitted.completeExceptionally(throwable);
+            body.fail(throwable);
+        }
+
+        @Override
+        public String getContentType() {
+            return part.getContentType();
+        }
+
+        @Override
+        public String getName() {
+            return part.getName();
+        }
+
+        @Override
+        public long getKnownSize() {
+            return part.getKnownSize();
+        }
+
+        @Override
+        public String getSubmittedFileName() {
+            return part.getSubmittedFileName();
+        }
+
+        @Override
+        public boolean isFile() {
+            return part.isFile();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return part.isFinished();
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return part.getHeader(name);
+        }
+
+        @Override
+        public Collection<String> getHeaders(final String name) {
+            return part.getHeaders(name);
+        }
+
+        @Override
+        public Collection<String> getHeaderNames() {
+            return part.getHeaderNames();
+        }
+
+        @Override
+        public byte[] getDigest(final String algorithm) {
+            return part.getDigest(algorithm);
+        }
+
+        @Override
+        public long getChecksum(final String name) {
+            return part.getChecksum(name);
+        }
+
+        /**
+         * The body of the part. The parser writes one buffer at a time, each write
+         * completes when the buffer has been copied to the subscriber.
+         */
+        private final class Body implements Flow.Publisher<ByteBuffer>, Flow.Subscription, AsyncWritableChannel {
+
+            private Flow.Subscriber<? super ByteBuffer> subscriber;
+            private long demand;
+            private ByteBuffer pendingBuffer;
+            private CompletableFuture<Void> pendingWrite;
+            private boolean closed;
+            private Throwable failure;
+            private boolean cancelled;
+            private boolean terminated;
+            private boolean draining;
+            private boolean missed;
+
+            @Override
+            public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+                final boolean accepted;
+                synchronized (this) {
+                    accepted = this.subscriber == null;
+                    if (accepted) {
+                        this.subscriber = subscriber;
+                    }
+                }
+                if (!accepted) {
+                    rejectSubscriber(subscriber);
+                    return;
+                }
+                subscriber.onSubscribe(this);
+                drain();
+            }
+
+            @Override
+            public void request(final long count) {
+                if (count <= 0) {
+                    fail(new IllegalArgumentException("The requested amount must be positive: " + count));
+                    return;
+                }
+                synchronized (this) {
+                    demand = addDemand(demand, count);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                final CompletableFuture<Void> write;
+                synchronized (this) {
+                    cancelled = true;
+                    terminated = true;
+                    write = pendingWrite;
+                    discardPending();
+                }
+                if (write != null) {
+                    write.complete(null);
+                }
+            }
+
+            /**
+             * Drops the pending data. Must hold the lock.
+             */
+            private void discardPending() {
+                if (pendingBuffer != null) {
+                    pendingBuffer.position(pendingBuffer.limit());
+                }
+                pendingBuffer = null;
+                pendingWrite = null;
+            }
+
+            void fail(final Throwable throwable) {
+                final CompletableFuture<Void> write;
+                synchronized (this) {
+                    if (failure == null) {
+                        failure = throwable;
+                    }
+                    write = pendingWrite;
+                    discardPending();
+                }
+                if (write != null) {
+                    write.completeExceptionally(throwable);
+                }
+                drain();
+            }
+
+            @Override
+            public CompletionStage<Void> write(final ByteBuffer buffer) {
+                final CompletableFuture<Void> write;
+                synchronized (this) {
+                    if (failure != null) {
+                        return CompletableFuture.failedFuture(failure);
+                    }
+                    if (cancelled) {
+                        buffer.position(buffer.limit());
+                        return emitted;
+                    }
+                    write = new CompletableFuture<>();
+                    pendingBuffer = buffer;
+                    pendingWrite = write;
+                }
+                drain();
+                return write;
+            }
+
+            @Override
+            public CompletionStage<Void> flush() {
+                return emitted;
+            }
+
+            @Override
+            public void close() {
+                synchronized (this) {
+                    closed = true;
+                }
+                drain();
+            }
+
+            private void drain() {
+                synchronized (this) {
+                    if (draining) {
+                        missed = true;
+                        return;
+                    }
+                    draining = true;
+                }
+                while (true) {
+                    ByteBuffer item = null;
+                    CompletableFuture<Void> write = null;
+                    Throwable error = null;
+                    var complete = false;
+                    synchronized (this) {
+                        if (subscriber == null || terminated) {
+                            draining = false;
+                            return;
+                        }
+                        if (failure != null) {
+                            error = failure;
+                            terminated = true;
+                        } else if (pendingBuffer != null && demand > 0) {
+                            item = ByteBuffer.allocate(pendingBuffer.remaining()).put(pendingBuffer).flip();
+                            write = pendingWrite;
+                            pendingBuffer = null;
+                            pendingWrite = null;
+                            demand--;
+                        } else if (pendingBuffer == null && closed) {
+                            complete = true;
+                            terminated = true;
+                        } else if (missed) {
+                            missed = false;
+                            continue;
+                        } else {
+                            draining = false;
+                            return;
+                        }
+                    }
+                    if (item != null) {
+                        subscriber.onNext(item);
+                        write.complete(null);
+                    } else if (error != null) {
+                        subscriber.onError(error);
+                    } else if (complete) {
+                        subscriber.onComplete();
+                    }
+                }
+            }
+        }
+    }
+}
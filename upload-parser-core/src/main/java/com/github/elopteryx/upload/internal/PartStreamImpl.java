@@ -20,28 +20,25 @@ import com.github.elopteryx.upload.PartOutput;
 import com.github.elopteryx.upload.PartStream;
 
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * Default implementation of {@link PartStream}.
  */
 public class PartStreamImpl implements PartStream {
 
-    /**
-     * The content type of the part.
-     */
-    private final String contentType;
     /**
      * The file name of the part.
      */
-    private final String fileName;
+    private String fileName;
     /**
      * The field name of the part.
      */
-    private final String fieldName;
+    private String fieldName;
     /**
-     * Whether the part is a file field.
+     * Whether the names have been extracted from the content disposition header.
      */
-    private final boolean fileField;
+    private boolean namesExtracted;
     /**
      * The headers, if any.
      */
@@ -59,6 +56,11 @@ public class PartStreamImpl implements PartStream {
      * The output object supplied by the caller.
      */
     private PartOutput output;
+    /**
+     * The digests and checksums computed over the data, set when the part ends.
+     */
+    private Map<String, byte[]> digests = Map.of();
+    private Map<String, Long> checksums = Map.of();
 
     /**
      * Creates a new instance.
@@ -69,18 +71,27 @@ public class PartStreamImpl implements PartStream {
     public PartStreamImpl(final String fileName, final String fieldName, final Headers headers) {
         this.fileName = fileName;
         this.fieldName = fieldName;
-        this.contentType = headers.getHeader(Headers.CONTENT_TYPE);
-        this.fileField = fileName != null;
+        this.namesExtracted = true;
+        this.headers = headers;
+    }
+
+    /**
+     * Creates a new instance. The names are extracted from
+     * the content disposition header when they are first accessed.
+     * @param headers The object containing the headers
+     */
+    PartStreamImpl(final Headers headers) {
         this.headers = headers;
     }
 
     @Override
     public String getContentType() {
-        return contentType;
+        return headers.getHeader(Headers.CONTENT_TYPE);
     }
 
     @Override
     public String getName() {
+        extractNames();
         return fieldName;
     }
 
@@ -91,12 +102,14 @@ public class PartStreamImpl implements PartStream {
 
     @Override
     public String getSubmittedFileName() {
+        extractNames();
         return checkFileName(fileName);
     }
 
     @Override
     public boolean isFile() {
-        return fileField;
+        extractNames();
+        return fileName != null;
     }
 
     @Override
@@ -119,6 +132,22 @@ public class PartStreamImpl implements PartStream {
         return headers.getHeaders(name);
     }
 
+    @Override
+    public byte[] getDigest(final String algorithm) {
+        final var digest = digests.get(algorithm);
+        return digest == null ? null : digest.clone();
+    }
+
+    @Override
+    public long getChecksum(final String name) {
+        return checksums.getOrDefault(name, -1L);
+    }
+
+    void setDigests(final Map<String, byte[]> digests, final Map<String, Long> checksums) {
+        this.digests = digests;
+        this.checksums = checksums;
+    }
+
     void setSize(final long size) {
         this.size = size;
     }
@@ -135,6 +164,15 @@ public class PartStreamImpl implements PartStream {
         this.output = output;
     }
 
+    private void extractNames() {
+        if (!namesExtracted) {
+            final var disposition = headers.getHeader(Headers.CONTENT_DISPOSITION);
+            fieldName = Headers.extractQuotedValueFromHeader(disposition, "name");
+            fileName = Headers.extractQuotedValueFromHeader(disposition, "filename");
+            namesExtracted = true;
+        }
+    }
+
     private String checkFileName(final String fileName) {
         if (fileName != null && fileName.indexOf('\u0000') != -1) {
             final var sb = new StringBuilder();
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.AsyncWritableChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Collects the data of a part written to an asynchronous channel, while the parsing
+ * continues, then writes it out with one write in progress at a time. The data is
+ * copied into chunks, which are reused by the following parts. The flush of the channel
+ * at the end of the part is handled like a write.
+ */
+final class PendingWrites {
+
+    /**
+     * Supplies the chunks, which are released by the parser.
+     */
+    private final IntFunction<ByteBuffer> allocator;
+
+    /**
+     * The size of the chunks.
+     */
+    private final int chunkSize;
+
+    /**
+     * The chunks waiting to be written, in order.
+     */
+    private final ArrayDeque<ByteBuffer> filledChunks = new ArrayDeque<>();
+
+    /**
+     * The chunks which can be filled.
+     */
+    private final ArrayDeque<ByteBuffer> freeChunks = new ArrayDeque<>();
+
+    /**
+     * The chunk being filled, null if there is none.
+     */
+    private ByteBuffer currentChunk;
+
+    /**
+     * The channel being written to and the function called when every chunk has been written.
+     */
+    private AsyncWritableChannel channel;
+    private Consumer<Throwable> callback;
+
+    /**
+     * Whether the channel should be flushed after the chunks, and whether the
+     * current stage belongs to the flush instead of a write.
+     */
+    private boolean flushChannel;
+    private boolean flushing;
+
+    /**
+     * Whether the stage of the current write is being registered, the completion
+     * during that time is handled by the writing thread, to avoid recursion.
+     */
+    private boolean registering;
+    private boolean completedEarly;
+    private Throwable earlyFailure;
+
+    /**
+     * Creates a new instance.
+     * @param allocator Supplies the chunks
+     * @param chunkSize The size of the chunks
+     */
+    PendingWrites(final IntFunction<ByteBuffer> allocator, final int chunkSize) {
+        this.allocator = allocator;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Copies the remaining bytes of the given buffer, updating its position.
+     * @param source The data to write later
+     */
+    void add(final ByteBuffer source) {
+        while (source.hasRemaining()) {
+            if (currentChunk == null) {
+                currentChunk = freeChunks.isEmpty() ? allocator.apply(chunkSize) : freeChunks.poll();
+            }
+            final var count = Math.min(currentChunk.remaining(), source.remaining());
+            currentChunk.put(currentChunk.position(), source, source.position(), count);
+            currentChunk.position(currentChunk.position() + count);
+            source.position(source.position() + count);
+            if (!currentChunk.hasRemaining()) {
+                filledChunks.add(currentChunk.flip());
+                currentChunk = null;
+            }
+        }
+    }
+
+    /**
+     * Returns whether there is data waiting to be written.
+     * @return True if there is no data
+     */
+    boolean isEmpty() {
+        return filledChunks.isEmpty() && (currentChunk == null || currentChunk.position() == 0);
+    }
+
+    /**
+     * Writes the collected data to the given channel, in order. If every write completes before
+     * the method returns then the callback is not called, otherwise it is called once, with null
+     * or the error, by the thread completing the last write.
+     * @param channel The channel to write to
+     * @param flushChannel Whether the channel should be flushed after the writes, at the end of the part
+     * @param callback The function to call if the writing does not complete immediately
+     * @return Whether every byte has been written
+     * @throws IOException If a write failed before the method returned
+     */
+    boolean flush(final AsyncWritableChannel channel, final boolean flushChannel, final Consumer<Throwable> callback) throws IOException {
+        if (currentChunk != null && currentChunk.position() > 0) {
+            filledChunks.add(currentChunk.flip());
+            currentChunk = null;
+        }
+        this.channel = channel;
+        this.flushChannel = flushChannel;
+        this.callback = callback;
+        return writeChunks();
+    }
+
+    /**
+     * Writes the chunks, then flushes the channel if necessary, while the stages complete immediately.
+     * @return Whether everything has been done
+     * @throws IOException If a write failed
+     */
+    private boolean writeChunks() throws IOException {
+        while (true) {
+            final var chunk = filledChunks.peek();
+            if (chunk == null && !flushChannel) {
+                return true;
+            }
+            flushing = chunk == null;
+            flushChannel &= !flushing;
+            final CompletionStage<Void> stage;
+            try {
+                stage = flushing ? channel.flush() : channel.write(chunk);
+            } catch (final RuntimeException e) {
+                throw new IOException(e);
+            }
+            synchronized (this) {
+                registering = true;
+                completedEarly = false;
+                earlyFailure = null;
+            }
+            stage.whenComplete((result, throwable) -> onWriteComplete(throwable));
+            final Throwable failure;
+            synchronized (this) {
+                registering = false;
+                if (!completedEarly) {
+                    return false;
+                }
+                failure = earlyFailure;
+            }
+            if (failure != null) {
+                throw asIoException(failure);
+            }
+            recycle();
+        }
+    }
+
+    /**
+     * Called when a write completed, continues with the next chunk, unless the
+     * registering thread does that.
+     * @param throwable The error or null if the write was successful
+     */
+    private void onWriteComplete(final Throwable throwable) {
+        synchronized (this) {
+            if (registering) {
+                completedEarly = true;
+                earlyFailure = throwable;
+                return;
+            }
+        }
+        if (throwable != null) {
+            callback.accept(asIoException(throwable));
+            return;
+        }
+        recycle();
+        try {
+            if (writeChunks()) {
+                callback.accept(null);
+            }
+        } catch (final IOException e) {
+            callback.accept(e);
+        }
+    }
+
+    /**
+     * Moves the written chunk to the free chunks.
+     */
+    private void recycle() {
+        if (!flushing) {
+            freeChunks.add(filledChunks.poll().clear());
+        }
+    }
+
+    private static IOException asIoException(final Throwable throwable) {
+        final var cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        return cause instanceof IOException ioException ? ioException : new IOException(cause);
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import static java.util.Objects.requireNonNull;
+
+import com.github.elopteryx.upload.PartIterator;
+import com.github.elopteryx.upload.ReadablePart;
+import com.github.elopteryx.upload.errors.MultipartException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * The pull based implementation of the parser. The request is parsed as the caller
+ * reads the parts, one buffer at a time. The parsing pauses at the beginning and
+ * at the end of each part, so the decoded data of one read never exceeds a buffer,
+ * apart from the few bytes held back while matching the boundary.
+ * The callbacks and the output settings are not used, the size limits are.
+ */
+public final class PullUploadParser extends AbstractUploadParser implements PartIterator {
+
+    /**
+     * The request object, null if the data does not come from a servlet request.
+     */
+    private final HttpServletRequest request;
+
+    /**
+     * The value of the content type header, used if there is no request.
+     */
+    private final String contentType;
+
+    /**
+     * The stream to read.
+     */
+    private InputStream inputStream;
+
+    /**
+     * The decoded data of the current part, waiting to be read.
+     */
+    private ByteBuffer pending;
+
+    /**
+     * The part whose headers have been parsed, but has not been returned yet.
+     */
+    private Part nextPart;
+
+    /**
+     * The part returned last, its data is being parsed.
+     */
+    private Part currentPart;
+
+    /**
+     * Whether the current part has ended, all of its data is in the pending buffer.
+     */
+    private boolean partEnded = true;
+
+    /**
+     * Whether the data of the current part should be dropped, instead of stored.
+     */
+    private boolean discarding;
+
+    /**
+     * Whether the parsing ended, either because the request ended, an error happened or it was closed.
+     */
+    private boolean closed;
+
+    public PullUploadParser(final ParserSettings settings, final HttpServletRequest request) {
+        super(settings);
+        this.request = request;
+        this.contentType = null;
+    }
+
+    /**
+     * Creates a parser which is not bound to a servlet request.
+     * @param settings The shared configuration
+     * @param contentType The value of the content type header, must contain the boundary
+     * @param inputStream The stream containing the request body
+     */
+    public PullUploadParser(final ParserSettings settings, final String contentType, final InputStream inputStream) {
+        super(settings);
+        this.request = null;
+        this.contentType = requireNonNull(contentType);
+        this.inputStream = requireNonNull(inputStream);
+    }
+
+    /**
+     * Sets up the parser, without reading the request.
+     * @return The parser, which is also the iterator
+     * @throws IOException If an error occurred with the request stream
+     */
+    public PartIterator setupPullParse() throws IOException {
+        try {
+            if (request == null) {
+                init(contentType);
+            } else {
+                init(request);
+                inputStream = ServletSupport.getInputStream(request);
+            }
+            dataBuffer.limit(0);
+            pending = acquire(dataBuffer.capacity()).limit(0);
+        } catch (final IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        return this;
+    }
+
+    @Override
+    public void beginPart(final Headers headers) {
+        if (headers.headerStartsWith(Headers.CONTENT_DISPOSITION, "form-data")) {
+            nextPart = new Part(headers);
+            context.reset(nextPart);
+            discarding = false;
+        } else {
+            discarding = true;
+            parseState.skipPart();
+        }
+        partEnded = false;
+        parseState.pause();
+    }
+
+    @Override
+    public void data(final ByteBuffer buffer) {
+        checkPartSize(buffer.remaining());
+        if (discarding) {
+            buffer.position(buffer.limit());
+            return;
+        }
+        pending.compact();
+        if (pending.remaining() < buffer.remaining()) {
+            // Only the bytes held back while matching a boundary can exceed the buffer
+            pending = ByteBuffer.allocate(pending.position() + buffer.remaining()).put(pending.flip());
+        }
+        pending.put(buffer).flip();
+    }
+
+    @Override
+    public void endPart() {
+        if (!discarding) {
+            context.getCurrentPart().markAsFinished();
+            context.updatePartBytesRead();
+        }
+        partEnded = true;
+        parseState.pause();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (nextPart != null) {
+            return true;
+        }
+        // The rest of the current part is skipped
+        discarding = true;
+        parseState.skipPart();
+        pending.limit(0);
+        while (nextPart == null) {
+            if (!parseMore()) {
+                close();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ReadablePart next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        currentPart = nextPart;
+        nextPart = null;
+        return currentPart;
+    }
+
+    /**
+     * Reads the data of the given part.
+     * @param part The part being read
+     * @param bytes The array to read into
+     * @param off The offset in the array
+     * @param len The maximum number of bytes
+     * @return The number of bytes read or -1 if the part ended
+     * @throws IOException If an error occurred with the I/O or the request is malformed
+     */
+    private int read(final Part part, final byte[] bytes, final int off, final int len) throws IOException {
+        if (part != currentPart || nextPart != null) {
+            return -1;
+        }
+        while (!pending.hasRemaining()) {
+            if (partEnded) {
+                return -1;
+            }
+            if (!parseMore()) {
+                throw new MultipartException("Stream ended unexpectedly!");
+            }
+        }
+        final var count = Math.min(len, pending.remaining());
+        pending.get(bytes, off, count);
+        return count;
+    }
+
+    /**
+     * Parses the rest of the data buffer, reading it again if it is empty.
+     * @return False if the request ended
+     * @throws IOException If an error occurred with the I/O or the request is malformed
+     */
+    private boolean parseMore() throws IOException {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (parseState.isComplete()) {
+                return false;
+            }
+            if (!dataBuffer.hasRemaining()) {
+                final var count = inputStream.read(dataBuffer.array(), dataBuffer.arrayOffset(), dataBuffer.capacity());
+                if (count == -1) {
+                    throw new MultipartException("Stream ended unexpectedly!");
+                }
+                checkRequestSize(count);
+                dataBuffer.position(0);
+                dataBuffer.limit(count);
+            }
+            parseState.parse(dataBuffer);
+            return true;
+        } catch (final IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            releaseBuffers();
+            pending = ByteBuffer.allocate(0);
+        }
+    }
+
+    /**
+     * The part returned by the iterator.
+     */
+    private final class Part extends PartStreamImpl implements ReadablePart {
+
+        /**
+         * The array used to read a single byte.
+         */
+        private final byte[] singleByte = new byte[1];
+
+        /**
+         * The stream of the body.
+         */
+        private final InputStream body = new InputStream() {
+
+            @Override
+            public int read() throws IOException {
+                return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+            }
+
+            @Override
+            public int read(final byte[] bytes, final int off, final int len) throws IOException {
+                Objects.checkFromIndexSize(off, len, bytes.length);
+                if (len == 0) {
+                    return 0;
+                }
+                return PullUploadParser.this.read(Part.this, bytes, off, len);
+            }
+
+            @Override
+            public int available() {
+                return Part.this == currentPart && nextPart == null ? pending.remaining() : 0;
+            }
+        };
+
+        Part(final Headers headers) {
+            super(headers);
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return body;
+        }
+    }
+}
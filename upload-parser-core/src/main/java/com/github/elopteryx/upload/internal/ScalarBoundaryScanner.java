@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+/**
+ * The default implementation of {@link BoundaryScanner}, checks one byte at a time.
+ */
+final class ScalarBoundaryScanner implements BoundaryScanner {
+
+    /**
+     * The first byte of the boundary.
+     */
+    private final byte first;
+    /**
+     * The second byte of the boundary.
+     */
+    private final byte second;
+
+    ScalarBoundaryScanner(final byte first, final byte second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public int indexOf(final byte[] array, final int from, final int to) {
+        return indexOf(array, from, to, first, second);
+    }
+
+    /**
+     * Scans the given range one byte at a time. Also used by the vectorized
+     * implementation to process the tail of the range.
+     * @param array The array to scan
+     * @param from The start index, inclusive
+     * @param to The end index, exclusive
+     * @param first The first byte of the boundary
+     * @param second The second byte of the boundary
+     * @return The index of the first candidate or the end index if there is none
+     */
+    static int indexOf(final byte[] array, final int from, final int to, final byte first, final byte second) {
+        for (var i = from; i < to; i++) {
+            if (array[i] == first && (i + 1 == to || array[i + 1] == second)) {
+                return i;
+            }
+        }
+        return to;
+    }
+}
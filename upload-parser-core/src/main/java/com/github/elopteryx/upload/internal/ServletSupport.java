@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Utility methods which use the servlet classes as their standard supertypes.
+ * The JVM has to load the servlet classes to verify such code, so it is kept
+ * here, allowing the parsers to be used without the servlet API.
+ */
+final class ServletSupport {
+
+    private ServletSupport() {
+        // No need to instantiate
+    }
+
+    /**
+     * Returns the input stream of the given request.
+     * @param request The servlet request
+     * @return The servlet input stream
+     * @throws IOException If an error occurred with the I/O
+     */
+    static InputStream getInputStream(final HttpServletRequest request) throws IOException {
+        return request.getInputStream();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.BufferPool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A bounded buffer pool, created by {@link BufferPool#striped(int, int)}. The buffers
+ * are grouped into size classes, each one being a power of two. A buffer is taken from
+ * and returned to the stripe selected by the current thread, so the concurrent requests
+ * rarely compete for the same lock.
+ *
+ * <p>This class is not part of the API, it is only public so the factory method of
+ * {@link BufferPool} can create it. The package is not exported, use the factory.</p>
+ */
+public final class StripedBufferPool implements BufferPool {
+
+    /**
+     * The default capacity of the largest pooled buffers.
+     */
+    public static final int DEFAULT_MAX_CAPACITY = 1024 * 1024;
+
+    /**
+     * The default number of buffers retained for each size class in a stripe.
+     */
+    public static final int DEFAULT_MAX_BUFFERS_PER_CLASS = 8;
+
+    /**
+     * The capacity of the smallest size class, as a power of two.
+     */
+    private static final int MIN_SHIFT = 8;
+
+    /**
+     * The upper limit for the number of stripes.
+     */
+    private static final int MAX_STRIPES = 64;
+
+    private final int maxCapacity;
+    private final int sizeClasses;
+    private final Stripe[] stripes;
+
+    /**
+     * Creates the pool.
+     * @param maxCapacity The capacity of the largest pooled buffers, rounded up to a power of two
+     * @param maxBuffersPerClass The number of buffers retained for each size class in a stripe
+     * @throws IllegalArgumentException If a parameter is not positive
+     */
+    public StripedBufferPool(final int maxCapacity, final int maxBuffersPerClass) {
+        if (maxCapacity <= 0 || maxCapacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid parameter value: " + maxCapacity);
+        }
+        if (maxBuffersPerClass <= 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + maxBuffersPerClass);
+        }
+        this.sizeClasses = sizeClass(maxCapacity) + 1;
+        this.maxCapacity = 1 << (MIN_SHIFT + sizeClasses - 1);
+        final var stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+        this.stripes = new Stripe[stripeCount];
+        for (var i = 0; i < stripeCount; i++) {
+            // Heap and direct buffers are kept in separate slots
+            stripes[i] = new Stripe(sizeClasses * 2, maxBuffersPerClass);
+        }
+    }
+
+    @Override
+    public ByteBuffer acquire(final int capacity, final boolean direct) {
+        if (capacity > maxCapacity) {
+            return allocate(capacity, direct);
+        }
+        final var sizeClass = sizeClass(capacity);
+        final var buffer = stripe().poll(slot(sizeClass, direct));
+        return buffer == null ? allocate(1 << (MIN_SHIFT + sizeClass), direct) : buffer;
+    }
+
+    @Override
+    public void release(final ByteBuffer buffer) {
+        final var capacity = buffer.capacity();
+        // Only the buffers allocated by the pool are kept
+        if (capacity > maxCapacity || capacity < 1 << MIN_SHIFT || Integer.bitCount(capacity) != 1 || buffer.isReadOnly()) {
+            return;
+        }
+        buffer.clear();
+        stripe().offer(slot(sizeClass(capacity), buffer.isDirect()), buffer);
+    }
+
+    private static ByteBuffer allocate(final int capacity, final boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Returns the index of the smallest size class which can hold the given capacity.
+     */
+    private static int sizeClass(final int capacity) {
+        return capacity <= 1 << MIN_SHIFT ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+
+    private int slot(final int sizeClass, final boolean direct) {
+        return direct ? sizeClasses + sizeClass : sizeClass;
+    }
+
+    private Stripe stripe() {
+        return stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+    }
+
+    /**
+     * A part of the pool, holding a bounded stack of buffers for each slot.
+     */
+    private static final class Stripe {
+
+        private final ByteBuffer[][] buffers;
+        private final int[] counts;
+
+        Stripe(final int slots, final int maxBuffersPerClass) {
+            this.buffers = new ByteBuffer[slots][maxBuffersPerClass];
+            this.counts = new int[slots];
+        }
+
+        synchronized ByteBuffer poll(final int slot) {
+            final var count = counts[slot];
+            if (count == 0) {
+                return null;
+            }
+            final var buffer = buffers[slot][count - 1];
+            buffers[slot][count - 1] = null;
+            counts[slot] = count - 1;
+            return buffer;
+        }
+
+        synchronized void offer(final int slot, final ByteBuffer buffer) {
+            final var count = counts[slot];
+            if (count < buffers[slot].length) {
+                buffers[slot][count] = buffer;
+                counts[slot] = count + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.BufferPool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A pool which allocates a new buffer for every request.
+ *
+ * <p>This class is not part of the API, it is only public so the factory method of
+ * {@link BufferPool} can return it. The package is not exported, use the factory.</p>
+ */
+public final class UnpooledBufferPool implements BufferPool {
+
+    /**
+     * The shared instance, the class has no state.
+     */
+    public static final BufferPool INSTANCE = new UnpooledBufferPool();
+
+    private UnpooledBufferPool() {
+        // No need to allow public access
+    }
+
+    @Override
+    public ByteBuffer acquire(final int capacity, final boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    @Override
+    public void release(final ByteBuffer buffer) {
+        // Left to the garbage collector
+    }
+}
@@ -59,7 +59,7 @@ public class UploadContextImpl implements UploadContext {
     /**
      * The total number for the bytes read for the current part.
      */
-    private int partBytesRead;
+    private long partBytesRead;
 
     public UploadContextImpl(final HttpServletRequest request, final Object userObject) {
         this.request = request;
@@ -116,11 +116,11 @@ public class UploadContextImpl implements UploadContext {
         currentPart.setSize(partBytesRead);
     }
 
-    int getPartBytesRead() {
+    long getPartBytesRead() {
         return partBytesRead;
     }
 
-    int incrementAndGetPartBytesRead(final int additional) {
+    long incrementAndGetPartBytesRead(final long additional) {
         partBytesRead += additional;
         return partBytesRead;
     }
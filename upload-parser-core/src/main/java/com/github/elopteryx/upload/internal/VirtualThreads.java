@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+/**
+ * Starts the threads used by the virtual thread parsing mode. Virtual threads
+ * are only available from Java 21, this version is used by the older runtimes,
+ * where the mode is not supported. The jar is a multi-release jar, the
+ * implementation for Java 21 and newer is in the versioned directory.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+        // No need to instantiate
+    }
+
+    /**
+     * Returns whether virtual threads can be started.
+     * @return Always false on this runtime
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Starts a new virtual thread running the given task.
+     * @param task The task to run
+     * @throws UnsupportedOperationException Always, on this runtime
+     */
+    static void start(final Runnable task) {
+        throw new UnsupportedOperationException("Virtual threads are not supported by this runtime!");
+    }
+}
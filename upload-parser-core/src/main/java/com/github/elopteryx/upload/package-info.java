@@ -21,5 +21,9 @@
  * API of the servlet specification. Using that makes the
  * servlet input stream unavailable for this library or any code
  * that is written by the users.</p>
+ *
+ * <p>The blocking parsing is also available for channels, streams
+ * and buffers, given the content type. In that case the servlet API
+ * is not required at runtime.</p>
  */
 package com.github.elopteryx.upload;
\ No newline at end of file
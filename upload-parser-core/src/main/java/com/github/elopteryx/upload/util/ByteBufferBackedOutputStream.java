@@ -7,13 +7,13 @@ import java.util.Objects;
 
 /**
  * An output stream implementation which writes to the given byte buffer.
- * The stream will not copy bytes to a temporary buffer, therefore read-only
- * and direct buffers are not supported.
+ * The stream will not copy bytes to a temporary buffer, the data is transferred
+ * in bulk, so direct buffers are supported as well. Read-only buffers cannot be written.
  */
 public class ByteBufferBackedOutputStream extends OutputStream {
 
     /**
-     * The byte buffer. Cannot be read-only or direct.
+     * The byte buffer. Cannot be read-only.
      */
     private final ByteBuffer buffer;
 
@@ -28,8 +28,8 @@ public class ByteBufferBackedOutputStream extends OutputStream {
      */
     public ByteBufferBackedOutputStream(final ByteBuffer buffer) {
         this.buffer = Objects.requireNonNull(buffer);
-        if (buffer.isDirect() || buffer.isReadOnly()) {
-            throw new IllegalArgumentException("The buffer cannot be direct or read-only!");
+        if (buffer.isReadOnly()) {
+            throw new IllegalArgumentException("The buffer cannot be read-only!");
         }
     }
 
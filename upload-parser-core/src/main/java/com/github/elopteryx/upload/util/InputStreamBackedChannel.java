@@ -3,6 +3,7 @@ package com.github.elopteryx.upload.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ReadableByteChannel;
 import java.util.Objects;
@@ -13,13 +14,19 @@ import java.util.Objects;
  *
  * <p>This implementation differs from the one returned
  * in {@link java.nio.channels.Channels#newChannel(InputStream)}
- * by one notable thing, it does not use a temporary buffer, because
- * it will not handle read-only or direct ByteBuffers.</p>
+ * by one notable thing, it reads into the backing array of the heap
+ * ByteBuffers directly. The direct buffers are filled in bulk from
+ * a transfer array, which is allocated once for the channel.</p>
  *
  * <p>The channel honors the close contract, it cannot be used after closing.</p>
  */
 public class InputStreamBackedChannel implements ReadableByteChannel {
 
+    /**
+     * The size of the transfer array.
+     */
+    private static final int TRANSFER_SIZE = 8192;
+
     /**
      * Flag to determine whether the channel is closed or not.
      */
@@ -30,6 +37,11 @@ public class InputStreamBackedChannel implements ReadableByteChannel {
      */
     private final InputStream inputStream;
 
+    /**
+     * The array used for the buffers without an accessible array, created when it is first needed.
+     */
+    private byte[] transferArray;
+
     /**
      * Public constructor.
      * @param inputStream The input stream
@@ -43,14 +55,25 @@ public class InputStreamBackedChannel implements ReadableByteChannel {
         if (!open) {
             throw new ClosedChannelException();
         }
-        if (dst.isDirect() || dst.isReadOnly()) {
-            throw new IllegalArgumentException("The buffer cannot be direct or read-only!");
+        if (dst.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        final int read;
+        if (dst.hasArray()) {
+            final var position = dst.position();
+            read = inputStream.read(dst.array(), dst.arrayOffset() + position, dst.remaining());
+            if (read > 0) {
+                dst.position(position + read);
+            }
+        } else {
+            if (transferArray == null) {
+                transferArray = new byte[TRANSFER_SIZE];
+            }
+            read = inputStream.read(transferArray, 0, Math.min(dst.remaining(), transferArray.length));
+            if (read > 0) {
+                dst.put(transferArray, 0, read);
+            }
         }
-        final var buf = dst.array();
-        final var offset = dst.position();
-        final var len = dst.remaining();
-        final var read = inputStream.read(buf, offset, len);
-        dst.position(offset + read);
         return read;
     }
 
@@ -29,13 +29,20 @@ import java.util.Objects;
  *
  * <p>This implementation differs from the one returned
  * in {@link java.nio.channels.Channels#newChannel(OutputStream)}
- * by one notable thing, it does not use a temporary buffer, because
- * it will not handle read-only or direct ByteBuffers.</p>
+ * by one notable thing, it writes the backing array of the heap
+ * ByteBuffers directly. The read-only and direct buffers are copied
+ * in bulk through a transfer array, which is allocated once
+ * for the channel.</p>
  *
  * <p>The channel honors the close contract, it cannot be used after closing.</p>
  */
 public class OutputStreamBackedChannel implements WritableByteChannel {
 
+    /**
+     * The size of the transfer array.
+     */
+    private static final int TRANSFER_SIZE = 8192;
+
     /**
      * Flag to determine whether the channel is closed or not.
      */
@@ -46,6 +53,11 @@ public class OutputStreamBackedChannel implements WritableByteChannel {
      */
     private final OutputStream outputStream;
 
+    /**
+     * The array used for the buffers without an accessible array, created when it is first needed.
+     */
+    private byte[] transferArray;
+
     /**
      * Public constructor.
      * @param outputStream The output stream
@@ -59,14 +71,21 @@ public class OutputStreamBackedChannel implements WritableByteChannel {
         if (!open) {
             throw new ClosedChannelException();
         }
-        if (src.isDirect() || src.isReadOnly()) {
-            throw new IllegalArgumentException("The buffer cannot be direct or read-only!");
-        }
-        final var buf = src.array();
-        final var offset = src.position();
         final var len = src.remaining();
-        outputStream.write(buf, offset, len);
-        src.position(offset + len);
+        if (src.hasArray()) {
+            final var position = src.position();
+            outputStream.write(src.array(), src.arrayOffset() + position, len);
+            src.position(position + len);
+        } else {
+            if (transferArray == null) {
+                transferArray = new byte[TRANSFER_SIZE];
+            }
+            while (src.hasRemaining()) {
+                final var count = Math.min(src.remaining(), transferArray.length);
+                src.get(transferArray, 0, count);
+                outputStream.write(transferArray, 0, count);
+            }
+        }
         return len;
     }
 
@@ -1,8 +1,8 @@
 /**
- * Async file upload module for servlets.
+ * Async file upload module for servlets and other multipart sources.
  */
 module com.github.elopteryx.upload {
-    requires jakarta.servlet;
+    requires static jakarta.servlet;
     exports com.github.elopteryx.upload;
     exports com.github.elopteryx.upload.errors;
     exports com.github.elopteryx.upload.util;
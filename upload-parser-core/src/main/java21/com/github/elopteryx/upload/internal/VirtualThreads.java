@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Starts the threads used by the virtual thread parsing mode. This is the
+ * implementation for Java 21 and newer, loaded from the versioned directory
+ * of the multi-release jar.
+ */
+final class VirtualThreads {
+
+    /**
+     * Creates the threads, with a name showing where they came from. Unlike
+     * the builder, the factory can be shared between threads.
+     */
+    private static final ThreadFactory FACTORY = Thread.ofVirtual().name("upload-parser-", 0).factory();
+
+    private VirtualThreads() {
+        // No need to instantiate
+    }
+
+    /**
+     * Returns whether virtual threads can be started.
+     * @return Always true on this runtime
+     */
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Starts a new virtual thread running the given task.
+     * @param task The task to run
+     */
+    static void start(final Runnable task) {
+        FACTORY.newThread(task).start();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation of {@link BoundaryScanner} using the Vector API. Compares
+ * a full vector (16, 32 or 64 bytes depending on the hardware) against the
+ * first two bytes of the boundary at once and falls back to the scalar checks
+ * only for the tail of the range.
+ *
+ * <p>This class is only compiled with {@code -PvectorScanner} and must only
+ * be loaded if the incubator module is present, it is created through its
+ * {@link Factory}, see {@link BoundaryScanner.Support}.</p>
+ */
+final class VectorBoundaryScanner implements BoundaryScanner {
+
+    /**
+     * The widest species supported by the platform.
+     */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    /**
+     * The minimum number of lanes worth vectorizing for.
+     */
+    private static final int MIN_LANES = 16;
+
+    /**
+     * The first byte of the boundary.
+     */
+    private final byte first;
+    /**
+     * The second byte of the boundary.
+     */
+    private final byte second;
+
+    VectorBoundaryScanner(final byte first, final byte second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public int indexOf(final byte[] array, final int from, final int to) {
+        final var length = SPECIES.length();
+        var index = from;
+        // The second byte is loaded with an offset of one, so the last
+        // vector must end one byte before the end of the range
+        while (index < to - length) {
+            final var head = ByteVector.fromArray(SPECIES, array, index);
+            final var next = ByteVector.fromArray(SPECIES, array, index + 1);
+            final var mask = head.eq(first).and(next.eq(second));
+            if (mask.anyTrue()) {
+                return index + mask.firstTrue();
+            }
+            index += length;
+        }
+        return ScalarBoundaryScanner.indexOf(array, index, to, first, second);
+    }
+
+    /**
+     * The factory instantiated reflectively by the parser.
+     */
+    static final class Factory implements BoundaryScanner.Factory {
+
+        /**
+         * Returns whether the platform has wide enough vectors to make this
+         * implementation faster than the scalar one.
+         * @return True if the implementation should be used
+         */
+        @Override
+        public boolean isSupported() {
+            return SPECIES.length() >= MIN_LANES;
+        }
+
+        @Override
+        public BoundaryScanner create(final byte first, final byte second) {
+            return new VectorBoundaryScanner(first, second);
+        }
+    }
+}
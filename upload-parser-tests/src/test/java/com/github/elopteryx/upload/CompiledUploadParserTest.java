@@ -0,0 +1,126 @@
+package com.github.elopteryx.upload;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+import com.github.elopteryx.upload.errors.PartSizeException;
+import com.github.elopteryx.upload.internal.Headers;
+import com.github.elopteryx.upload.util.GeneratedServletInputStream;
+import com.github.elopteryx.upload.util.Servlets;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import jakarta.servlet.http.HttpServletResponse;
+
+class CompiledUploadParserTest {
+
+    private static final String CONTENT_TYPE = "multipart/form-data; boundary=----1234";
+
+    private static final byte[] REQUEST_DATA = ("------1234\r\n"
+            + "Content-Disposition: form-data; name=\"first\"; filename=\"first.txt\"\r\n"
+            + "Content-Transfer-Encoding: base64\r\n"
+            + "\r\n"
+            + "Rmlyc3QgcGFydA\r\n"
+            + "------1234\r\n"
+            + "Content-Disposition: form-data; name=\"second\"; filename=\"second.txt\"\r\n"
+            + "Content-Transfer-Encoding: base64\r\n"
+            + "\r\n"
+            + "U2Vjb25kIHBhcnQ=\r\n"
+            + "------1234\r\n"
+            + "Content-Disposition: form-data; name=\"third\"\r\n"
+            + "Content-Transfer-Encoding: quoted-printable\r\n"
+            + "\r\n"
+            + "Third=20part\r\n"
+            + "------1234--\r\n").getBytes(UTF_8);
+
+    @Test
+    void contradicting_limits_should_be_rejected() {
+        assertThrows(IllegalStateException.class, () -> UploadParser.newParser().maxPartSize(1024).maxRequestSize(1023).compile());
+        UploadParser.newParser().maxPartSize(1024).maxRequestSize(1024).compile();
+        UploadParser.newParser().maxPartSize(1024).compile();
+    }
+
+    @Test
+    void compiled_parser_should_not_change_with_the_builder() throws Exception {
+        final var errors = new ArrayList<Throwable>();
+        final var builder = UploadParser.newParser()
+                .onError((context, throwable) -> errors.add(throwable))
+                .maxPartSize(4);
+        final var compiled = builder.compile();
+        builder.maxPartSize(1024);
+        assertEquals(4, compiled.settings().getMaxPartSize());
+
+        builder.compile().doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        assertEquals(0, errors.size());
+        compiled.doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        assertEquals(1, errors.size());
+        assertEquals(PartSizeException.class, errors.get(0).getClass());
+    }
+
+    @Test
+    void compiled_parser_should_own_a_pool() {
+        final var pool = BufferPool.striped();
+        assertSame(pool, UploadParser.newParser().bufferPool(pool).compile().settings().getBufferPool());
+        final var builder = UploadParser.newParser();
+        final var first = builder.compile().settings().getBufferPool();
+        assertNotSame(BufferPool.unpooled(), first);
+        assertNotSame(first, builder.compile().settings().getBufferPool());
+    }
+
+    @Test
+    void compiled_parser_should_be_reusable() throws Exception {
+        final Map<String, ByteArrayOutputStream> outputs = new ConcurrentHashMap<>();
+        final var compiled = UploadParser.newParser()
+                .onPartBegin((context, buffer) -> {
+                    final var output = new ByteArrayOutputStream();
+                    outputs.put(Thread.currentThread().getName() + context.getCurrentPart().getName(), output);
+                    return PartOutput.from(output);
+                })
+                .maxBytesUsed(64)
+                .compile();
+        final var executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<UploadContext>> results = new ArrayList<>();
+            for (var i = 0; i < 100; i++) {
+                results.add(executor.submit(() -> compiled.doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA))));
+            }
+            for (final var result : results) {
+                assertEquals(3, result.get(10, TimeUnit.SECONDS).getPartStreams().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (final var entry : outputs.entrySet()) {
+            final var expected = entry.getKey().endsWith("first") ? "First part" : entry.getKey().endsWith("second") ? "Second part" : "Third part";
+            assertEquals(expected, entry.getValue().toString(UTF_8));
+        }
+    }
+
+    @Test
+    void user_object_should_be_set_for_the_request() throws Exception {
+        final var request = Servlets.newRequest();
+        final var response = Servlets.newResponse();
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(CONTENT_TYPE);
+        when(request.getInputStream()).thenReturn(new GeneratedServletInputStream(100));
+
+        final var compiled = UploadParser.newParser()
+                .userObject("shared")
+                .compile();
+        final var context = compiled.doBlockingParse(request, response);
+        assertSame(response, context.getUserObject(HttpServletResponse.class));
+        assertEquals("shared", compiled.settings().getUserObject());
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.elopteryx.upload;
+
+import com.github.elopteryx.upload.internal.ParserSettings;
+
+public final class ParserSettingsAccess {
+
+    private ParserSettingsAccess() {
+        // No need to instantiate
+    }
+
+    /**
+     * Returns the settings the compiled parser passes to the parser implementations.
+     * @param compiled The compiled parser
+     * @return The settings
+     */
+    public static ParserSettings of(final CompiledUploadParser compiled) {
+        return compiled.settings();
+    }
+}
@@ -52,4 +52,13 @@ class PartOutputTest {
 
         assertNotNull(output.unwrap(Path.class));
     }
+
+    @Test
+    void create_skip_output() {
+        final var output = PartOutput.skip();
+
+        assertTrue(output.isSkipped());
+        assertFalse(output.safeToCast(Object.class));
+        assertFalse(PartOutput.from(Paths.get("")).isSkipped());
+    }
 }
@@ -48,6 +48,11 @@ class UploadParserTest implements OnPartBegin, OnPartEnd, OnRequestComplete, OnE
         );
     }
 
+    @Test
+    void unknown_digest_algorithm() {
+        assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().digest("NO-SUCH-DIGEST"));
+    }
+
     @Test
     void invalid_content_type_async() throws Exception {
         final var request = newRequest();
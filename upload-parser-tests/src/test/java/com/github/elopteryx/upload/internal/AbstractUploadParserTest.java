@@ -5,6 +5,8 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
+import com.github.elopteryx.upload.ParserSettingsAccess;
+import com.github.elopteryx.upload.UploadParser;
 import com.github.elopteryx.upload.errors.PartSizeException;
 import com.github.elopteryx.upload.errors.RequestSizeException;
 import com.github.elopteryx.upload.util.Servlets;
@@ -20,9 +22,14 @@ class AbstractUploadParserTest {
 
         when(request.getContentLengthLong()).thenReturn(requestSize);
 
-        final var parser = new AsyncUploadParser(request);
-        parser.setMaxPartSize(allowedPartSize);
-        parser.setMaxRequestSize(allowedRequestSize);
+        final var builder = UploadParser.newParser();
+        if (allowedPartSize > -1) {
+            builder.maxPartSize(allowedPartSize);
+        }
+        if (allowedRequestSize > -1) {
+            builder.maxRequestSize(allowedRequestSize);
+        }
+        final var parser = new AsyncUploadParser(ParserSettingsAccess.of(builder.compile()), request);
         parser.setupAsyncParse();
         return parser;
     }
@@ -65,5 +72,15 @@ class AbstractUploadParserTest {
         assertEquals(exception.getPermittedSize(), SMALL_SIZE);
         assertTrue(exception.getActualSize() > SMALL_SIZE);
     }
-    
+
+    @Test
+    void part_size_should_not_overflow() {
+        final var exception = assertThrows(PartSizeException.class, () -> {
+            final var parser = runSetupForSize(0, -1, 3 * (long) Integer.MAX_VALUE);
+            for (var i = 0; i < 4; i++) {
+                parser.checkPartSize(Integer.MAX_VALUE);
+            }
+        });
+        assertEquals(4 * (long) Integer.MAX_VALUE, exception.getActualSize());
+    }
 }
@@ -0,0 +1,53 @@
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.elopteryx.upload.BufferPool;
+import com.github.elopteryx.upload.util.LeakDetectingBufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+class AsyncFileChannelTest {
+
+    private static final String CONTENT = "0123456789".repeat(100);
+
+    @Test
+    void data_should_be_written_to_the_file() throws Exception {
+        final var file = Files.createTempFile("upload", ".txt");
+        try {
+            final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+            final var channel = AsyncFileChannel.open(file, pool, 64);
+            channel.write(ByteBuffer.wrap(CONTENT.getBytes(US_ASCII))).toCompletableFuture().get(10, TimeUnit.SECONDS);
+            channel.flush().toCompletableFuture().get(10, TimeUnit.SECONDS);
+            channel.close();
+            assertEquals(CONTENT, Files.readString(file, US_ASCII));
+            assertEquals(0, pool.getLeakCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void buffers_in_flight_should_be_released_after_close() throws Exception {
+        final var file = Files.createTempFile("upload", ".txt");
+        try {
+            final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+            final var channel = AsyncFileChannel.open(file, pool, 16);
+            channel.write(ByteBuffer.wrap(CONTENT.getBytes(US_ASCII)));
+            channel.close();
+            final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (pool.getLeakCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(pool.getAcquireCount() > 0);
+            assertEquals(0, pool.getLeakCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
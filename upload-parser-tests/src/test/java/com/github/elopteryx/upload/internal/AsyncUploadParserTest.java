@@ -1,16 +1,46 @@
 package com.github.elopteryx.upload.internal;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
+import com.github.elopteryx.upload.AsyncWritableChannel;
+import com.github.elopteryx.upload.BufferPool;
+import com.github.elopteryx.upload.PartOutput;
+import com.github.elopteryx.upload.PublishedPart;
+import com.github.elopteryx.upload.UploadContext;
 import com.github.elopteryx.upload.UploadParser;
 import com.github.elopteryx.upload.errors.MultipartException;
+import com.github.elopteryx.upload.util.GeneratedServletInputStream;
+import com.github.elopteryx.upload.util.LeakDetectingBufferPool;
 import com.github.elopteryx.upload.util.MockServletInputStream;
 import com.github.elopteryx.upload.util.Servlets;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 class AsyncUploadParserTest {
 
+    private static final long LARGE_PART_SIZE = 3L * 1024 * 1024 * 1024;
+
     @Test
     void this_should_end_with_multipart_exception() throws Exception {
         final var request = Servlets.newRequest();
@@ -41,4 +71,388 @@ class AsyncUploadParserTest {
 
         assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().setupAsyncParse(request));
     }
+
+    @Test
+    void parse_part_larger_than_two_gigabytes() throws Exception {
+        final var request = Servlets.newRequest();
+        final var inputStream = new GeneratedServletInputStream(LARGE_PART_SIZE);
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getContentLengthLong()).thenReturn(inputStream.getLength());
+        when(request.getInputStream()).thenReturn(inputStream);
+
+        final var result = new AtomicReference<UploadContext>();
+        UploadParser.newParser()
+                .onRequestComplete(result::set)
+                .maxBytesUsed(1024 * 1024)
+                .maxPartSize(LARGE_PART_SIZE)
+                .maxRequestSize(inputStream.getLength())
+                .setupAsyncParse(request);
+        inputStream.getReadListener().onDataAvailable();
+        inputStream.getReadListener().onAllDataRead();
+        assertEquals(1, result.get().getPartStreams().size());
+        assertEquals(LARGE_PART_SIZE, result.get().getPartStreams().get(0).getKnownSize());
+    }
+
+    @Test
+    void buffers_should_be_released_after_parsing() throws Exception {
+        final var request = Servlets.newRequest();
+        final var inputStream = new GeneratedServletInputStream(10_000);
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getInputStream()).thenReturn(inputStream);
+
+        final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+        final var result = new AtomicReference<UploadContext>();
+        UploadParser.newParser()
+                .onRequestComplete(result::set)
+                .bufferPool(pool)
+                .setupAsyncParse(request);
+        inputStream.getReadListener().onDataAvailable();
+        inputStream.getReadListener().onAllDataRead();
+        assertEquals(10_000, result.get().getPartStreams().get(0).getKnownSize());
+        assertEquals(3, pool.getAcquireCount());
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    void buffers_should_be_released_after_an_error() throws Exception {
+        final var request = Servlets.newRequest();
+
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=----1234");
+
+        final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+        UploadParser.newParser().bufferPool(pool).setupAsyncParse(request);
+        final var servletInputStream = (MockServletInputStream) request.getInputStream();
+        assertThrows(MultipartException.class, servletInputStream::onDataAvailable);
+        assertEquals(3, pool.getAcquireCount());
+        assertEquals(0, pool.getLeakCount());
+
+        when(request.isAsyncSupported()).thenReturn(false);
+        assertThrows(IllegalStateException.class, () -> UploadParser.newParser().bufferPool(pool).setupAsyncParse(request));
+        assertEquals(6, pool.getAcquireCount());
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    void executor_should_parse_with_a_bounded_read_ahead() throws Exception {
+        final var request = Servlets.newRequest();
+        final var inputStream = new GeneratedServletInputStream(10_000);
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getInputStream()).thenReturn(inputStream);
+
+        final var tasks = new ArrayDeque<Runnable>();
+        final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+        final var result = new AtomicReference<UploadContext>();
+        UploadParser.newParser()
+                .onRequestComplete(result::set)
+                .maxBytesUsed(1024)
+                .bufferPool(pool)
+                .executor(tasks::add, 2)
+                .setupAsyncParse(request);
+        inputStream.getReadListener().onDataAvailable();
+        assertFalse(inputStream.isFinished());
+        assertEquals(1, tasks.size());
+        assertEquals(4, pool.getAcquireCount());
+
+        runAll(tasks);
+        assertTrue(inputStream.isFinished());
+        assertNull(result.get());
+
+        inputStream.getReadListener().onAllDataRead();
+        runAll(tasks);
+        assertEquals(10_000, result.get().getPartStreams().get(0).getKnownSize());
+        assertEquals(4, pool.getAcquireCount());
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    void executor_should_report_errors_through_the_callback() throws Exception {
+        final var request = Servlets.newRequest();
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=----1234");
+
+        final var tasks = new ArrayDeque<Runnable>();
+        final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+        final var error = new AtomicReference<Throwable>();
+        UploadParser.newParser()
+                .onError((context, throwable) -> error.set(throwable))
+                .bufferPool(pool)
+                .executor(tasks::add)
+                .setupAsyncParse(request);
+        final var servletInputStream = (MockServletInputStream) request.getInputStream();
+        servletInputStream.onDataAvailable();
+        assertNull(error.get());
+
+        runAll(tasks);
+        assertInstanceOf(MultipartException.class, error.get());
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    void executor_should_not_leak_buffers_acquired_from_two_threads() throws Exception {
+        final var executor = Executors.newFixedThreadPool(4);
+        try {
+            final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+            final var compiled = UploadParser.newParser()
+                    .onPartBegin((context, buffer) -> PartOutput.from(new ByteArrayOutputStream()))
+                    .maxBytesUsed(1024)
+                    .bufferPool(pool)
+                    .coalesceWrites(256)
+                    .executor(executor, 4)
+                    .compile();
+            for (var i = 0; i < 200; i++) {
+                final var request = Servlets.newRequest();
+                final var inputStream = new GeneratedServletInputStream(10_000);
+
+                when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+                when(request.getInputStream()).thenReturn(inputStream);
+
+                // The container thread acquires the read-ahead buffers while
+                // the executor acquires the coalescing buffer for the part
+                final var future = compiled.doAsyncParse(request);
+                inputStream.getReadListener().onDataAvailable();
+                inputStream.getReadListener().onAllDataRead();
+                assertEquals(10_000, future.get(10, TimeUnit.SECONDS).getPartStreams().get(0).getKnownSize());
+            }
+            final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (pool.getLeakCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, pool.getLeakCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void async_channel_should_stop_the_reading_while_writing() throws Exception {
+        final var request = Servlets.newRequest();
+        final var inputStream = new GeneratedServletInputStream(10_000);
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getInputStream()).thenReturn(inputStream);
+
+        final var writes = new ArrayDeque<CompletableFuture<Void>>();
+        final var written = new AtomicLong();
+        final var channel = new AsyncWritableChannel() {
+            @Override
+            public CompletionStage<Void> write(final ByteBuffer buffer) {
+                written.addAndGet(buffer.remaining());
+                buffer.position(buffer.limit());
+                final var stage = new CompletableFuture<Void>();
+                writes.add(stage);
+                return stage;
+            }
+
+            @Override
+            public void close() {
+                // Nothing to close
+            }
+        };
+        final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+        final var result = new AtomicReference<UploadContext>();
+        UploadParser.newParser()
+                .onPartBegin((context, buffer) -> PartOutput.from(channel))
+                .onRequestComplete(result::set)
+                .maxBytesUsed(1024)
+                .bufferPool(pool)
+                .setupAsyncParse(request);
+        inputStream.getReadListener().onDataAvailable();
+        assertEquals(1, writes.size());
+        assertFalse(inputStream.isFinished());
+
+        CompletableFuture<Void> write;
+        while ((write = writes.poll()) != null) {
+            assertTrue(writes.isEmpty());
+            write.complete(null);
+        }
+        assertTrue(inputStream.isFinished());
+
+        inputStream.getReadListener().onAllDataRead();
+        assertEquals(10_000, written.get());
+        assertEquals(10_000, result.get().getPartStreams().get(0).getKnownSize());
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    void future_should_complete_with_the_context() throws Exception {
+        final var request = Servlets.newRequest();
+        final var inputStream = new GeneratedServletInputStream(10_000);
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getInputStream()).thenReturn(inputStream);
+
+        final var result = new AtomicReference<UploadContext>();
+        final var future = UploadParser.newParser()
+                .onRequestComplete(result::set)
+                .doAsyncParse(request);
+        inputStream.getReadListener().onDataAvailable();
+        assertFalse(future.isDone());
+
+        inputStream.getReadListener().onAllDataRead();
+        assertEquals(result.get(), future.getNow(null));
+        assertEquals(10_000, future.getNow(null).getPartStreams().get(0).getKnownSize());
+    }
+
+    @Test
+    void future_should_complete_with_the_error() throws Exception {
+        final var request = Servlets.newRequest();
+
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=----1234");
+
+        final var future = UploadParser.newParser().doAsyncParse(request);
+        final var servletInputStream = (MockServletInputStream) request.getInputStream();
+        final var exception = assertThrows(MultipartException.class, servletInputStream::onDataAvailable);
+        assertFalse(future.isDone());
+
+        servletInputStream.onError(exception);
+        final var thrown = assertThrows(ExecutionException.class, future::get);
+        assertEquals(exception, thrown.getCause());
+    }
+
+    @Test
+    void publisher_should_read_the_request_on_demand() throws Exception {
+        final var request = Servlets.newRequest();
+        final var inputStream = new GeneratedServletInputStream(10_000);
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getInputStream()).thenReturn(inputStream);
+
+        final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+        final var parts = new RecordingSubscriber<PublishedPart>();
+        UploadParser.newParser()
+                .maxBytesUsed(1024)
+                .bufferPool(pool)
+                .publishParts(request)
+                .subscribe(parts);
+        inputStream.getReadListener().onDataAvailable();
+        assertTrue(parts.items.isEmpty());
+
+        parts.subscription.request(1);
+        assertEquals(1, parts.items.size());
+        assertEquals("file", parts.items.get(0).getName());
+
+        final var body = new RecordingSubscriber<ByteBuffer>();
+        parts.items.get(0).getBody().subscribe(body);
+        body.subscription.request(1);
+        assertEquals(1, body.items.size());
+        assertFalse(inputStream.isFinished());
+
+        body.subscription.request(Long.MAX_VALUE);
+        assertTrue(inputStream.isFinished());
+        assertFalse(parts.completed);
+
+        inputStream.getReadListener().onAllDataRead();
+        // The buffers are kept until the end, they must not be reused by the parser
+        final var content = new ByteArrayOutputStream();
+        for (final var item : body.items) {
+            final var bytes = new byte[item.remaining()];
+            item.get(bytes);
+            content.writeBytes(bytes);
+        }
+        assertEquals("a".repeat(10_000), content.toString(US_ASCII));
+        assertTrue(body.completed);
+        assertTrue(parts.completed);
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    void publisher_should_not_use_the_executor() throws Exception {
+        final var request = Servlets.newRequest();
+        final var inputStream = new GeneratedServletInputStream(10_000);
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getInputStream()).thenReturn(inputStream);
+
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        final var parts = new RecordingSubscriber<PublishedPart>();
+        UploadParser.newParser()
+                .maxBytesUsed(1024)
+                .executor(tasks::add)
+                .publishParts(request)
+                .subscribe(parts);
+        parts.subscription.request(Long.MAX_VALUE);
+        inputStream.getReadListener().onDataAvailable();
+        assertEquals(1, parts.items.size());
+
+        final var body = new RecordingSubscriber<ByteBuffer>();
+        parts.items.get(0).getBody().subscribe(body);
+        body.subscription.request(Long.MAX_VALUE);
+        inputStream.getReadListener().onAllDataRead();
+        assertTrue(tasks.isEmpty());
+        assertTrue(body.completed);
+        assertTrue(parts.completed);
+    }
+
+    @Test
+    void publisher_should_skip_the_cancelled_bodies() throws Exception {
+        final var request = Servlets.newRequest();
+        final var inputStream = new GeneratedServletInputStream(10_000);
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getInputStream()).thenReturn(inputStream);
+
+        final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+        final var parts = new RecordingSubscriber<PublishedPart>();
+        final var publisher = UploadParser.newParser()
+                .maxBytesUsed(1024)
+                .bufferPool(pool)
+                .publishParts(request);
+        publisher.subscribe(parts);
+        parts.subscription.request(Long.MAX_VALUE);
+        inputStream.getReadListener().onDataAvailable();
+
+        final var body = new RecordingSubscriber<ByteBuffer>();
+        parts.items.get(0).getBody().subscribe(body);
+        body.subscription.cancel();
+        assertTrue(inputStream.isFinished());
+
+        inputStream.getReadListener().onAllDataRead();
+        assertTrue(body.items.isEmpty());
+        assertTrue(parts.completed);
+        assertEquals(0, pool.getLeakCount());
+
+        final var second = new RecordingSubscriber<PublishedPart>();
+        publisher.subscribe(second);
+        assertInstanceOf(IllegalStateException.class, second.error);
+    }
+
+    private static final class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+
+        private final List<T> items = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(final T item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static void runAll(final Queue<Runnable> tasks) {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
 }
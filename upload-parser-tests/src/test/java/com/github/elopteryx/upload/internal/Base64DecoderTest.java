@@ -157,6 +157,26 @@ class Base64DecoderTest {
         assertEquals(KNOWLEDGE, new String(buffer.array(), 0, buffer.limit(), US_ASCII));
     }
 
+    @Test
+    void decode_string_in_chunks() throws Exception {
+        final var encoded = TOWEL_BASE64.getBytes(US_ASCII);
+        for (final var chunkSize : new int[]{1, 3, 7, 76, 78, 500}) {
+            for (final var targetSize : new int[]{1, 2, 100, 4096}) {
+                final var decoder = new Base64Decoder();
+                final var result = new StringBuilder();
+                for (var i = 0; i < encoded.length; i += chunkSize) {
+                    final var source = ByteBuffer.wrap(encoded, i, Math.min(chunkSize, encoded.length - i));
+                    do {
+                        final var target = ByteBuffer.allocate(targetSize);
+                        decoder.decode(source, target);
+                        result.append(new String(target.array(), 0, target.position(), US_ASCII));
+                    } while (source.hasRemaining());
+                }
+                assertEquals(TOWEL, result.toString());
+            }
+        }
+    }
+
     @Test
     void decode_string_null_target() {
         assertThrows(IllegalStateException.class, () -> new Base64Decoder().decode(ByteBuffer.wrap(KNOWLEDGE_ENCODED.getBytes(US_ASCII)), null));
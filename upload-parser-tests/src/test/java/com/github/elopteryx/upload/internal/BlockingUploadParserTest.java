@@ -1,10 +1,21 @@
 package com.github.elopteryx.upload.internal;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.github.elopteryx.upload.AsyncWritableChannel;
+import com.github.elopteryx.upload.BufferPool;
 import com.github.elopteryx.upload.OnError;
 import com.github.elopteryx.upload.OnPartBegin;
 import com.github.elopteryx.upload.OnPartEnd;
@@ -12,16 +23,53 @@ import com.github.elopteryx.upload.PartOutput;
 import com.github.elopteryx.upload.UploadContext;
 import com.github.elopteryx.upload.UploadParser;
 import com.github.elopteryx.upload.errors.MultipartException;
+import com.github.elopteryx.upload.errors.PartSizeException;
+import com.github.elopteryx.upload.util.GeneratedServletInputStream;
+import com.github.elopteryx.upload.util.LeakDetectingBufferPool;
 import com.github.elopteryx.upload.util.Servlets;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServletResponse;
 
 class BlockingUploadParserTest implements OnPartBegin, OnPartEnd, OnError {
-    
+
+    private static final String CONTENT_TYPE = "multipart/form-data; charset=UTF-8; boundary=----1234";
+
+    private static final byte[] REQUEST_DATA = ("------1234\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"foo.txt\"\r\n"
+            + "Content-Type: text/whatever\r\n"
+            + "\r\n"
+            + "This is the content of the file\n"
+            + "\r\n"
+            + "------1234\r\n"
+            + "Content-Disposition: form-data; name=\"field\"\r\n"
+            + "\r\n"
+            + "fieldValue\r\n"
+            + "------1234--\r\n").getBytes(UTF_8);
+
+    private static final long LARGE_PART_SIZE = 3L * 1024 * 1024 * 1024;
+
     private final List<ByteArrayOutputStream> strings = new ArrayList<>();
 
     @Test
@@ -50,6 +98,453 @@ class BlockingUploadParserTest implements OnPartBegin, OnPartEnd, OnError {
         assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().doBlockingParse(request));
     }
 
+    @Test
+    void parse_without_servlet_from_input_stream() throws Exception {
+        final var context = UploadParser.newParser()
+                .onPartBegin(this)
+                .onPartEnd(this)
+                .onError(this)
+                .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        assertParsed(context);
+    }
+
+    @Test
+    void parse_without_servlet_from_channel() throws Exception {
+        final var context = UploadParser.newParser()
+                .onPartBegin(this)
+                .onPartEnd(this)
+                .onError(this)
+                .doBlockingParse(CONTENT_TYPE, Channels.newChannel(new ByteArrayInputStream(REQUEST_DATA)));
+        assertParsed(context);
+    }
+
+    @Test
+    void parse_without_servlet_from_buffers() throws Exception {
+        final var context = UploadParser.newParser()
+                .onPartBegin(this)
+                .onPartEnd(this)
+                .onError(this)
+                .doBlockingParse(CONTENT_TYPE, List.of(ByteBuffer.wrap(REQUEST_DATA, 0, 50), ByteBuffer.wrap(REQUEST_DATA, 50, REQUEST_DATA.length - 50)));
+        assertParsed(context);
+    }
+
+    @Test
+    void parse_without_servlet_from_direct_buffers() throws Exception {
+        final var first = ByteBuffer.allocateDirect(50).put(REQUEST_DATA, 0, 50).flip();
+        final var second = ByteBuffer.allocateDirect(REQUEST_DATA.length - 50).put(REQUEST_DATA, 50, REQUEST_DATA.length - 50).flip();
+        final var context = UploadParser.newParser()
+                .onPartBegin(this)
+                .onPartEnd(this)
+                .onError(this)
+                .doBlockingParse(CONTENT_TYPE, List.of(first.asReadOnlyBuffer(), second));
+        assertParsed(context);
+    }
+
+    @Test
+    void threshold_bytes_should_be_written_when_copied_from_several_chunks() throws Exception {
+        final var firstBytes = new ArrayList<String>();
+        final var context = UploadParser.newParser()
+                .onPartBegin((context1, buffer) -> {
+                    assertTrue(buffer.isReadOnly());
+                    final var bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    firstBytes.add(new String(bytes, UTF_8));
+                    return onPartBegin(context1, buffer);
+                })
+                .onError(this)
+                .sizeThreshold(8)
+                .doBlockingParse(CONTENT_TYPE, List.of(ByteBuffer.wrap(REQUEST_DATA, 0, 112), ByteBuffer.wrap(REQUEST_DATA, 112, REQUEST_DATA.length - 112)));
+        assertParsed(context);
+        assertEquals(List.of("This is ", "fieldValue"), firstBytes);
+    }
+
+    @Test
+    void threshold_bytes_should_be_a_view_when_the_first_chunk_covers_them() throws Exception {
+        final var firstBytes = new ArrayList<String>();
+        final var context = UploadParser.newParser()
+                .onPartBegin((context1, buffer) -> {
+                    assertTrue(buffer.isReadOnly());
+                    final var bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    firstBytes.add(new String(bytes, UTF_8));
+                    return onPartBegin(context1, buffer);
+                })
+                .onError(this)
+                .sizeThreshold(8)
+                .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        assertParsed(context);
+        assertEquals(List.of("This is the content of the file\n", "fieldValue"), firstBytes);
+    }
+
+    @Test
+    void digests_should_cover_the_buffered_and_the_written_bytes() throws Exception {
+        final var digests = new ArrayList<byte[]>();
+        final var checksums = new ArrayList<Long>();
+        UploadParser.newParser()
+                .onPartBegin(this)
+                .onPartEnd(context -> {
+                    digests.add(context.getCurrentPart().getDigest("SHA-256"));
+                    checksums.add(context.getCurrentPart().getChecksum("CRC32C"));
+                    assertNull(context.getCurrentPart().getDigest("MD5"));
+                })
+                .onError(this)
+                .sizeThreshold(8)
+                .digest("SHA-256")
+                .checksum("CRC32C", CRC32C::new)
+                .doBlockingParse(CONTENT_TYPE, List.of(ByteBuffer.wrap(REQUEST_DATA, 0, 112), ByteBuffer.wrap(REQUEST_DATA, 112, REQUEST_DATA.length - 112)));
+        final var values = List.of("This is the content of the file\n", "fieldValue");
+        for (var i = 0; i < values.size(); i++) {
+            final var bytes = values.get(i).getBytes(UTF_8);
+            assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(bytes), digests.get(i));
+            final var crc = new CRC32C();
+            crc.update(bytes);
+            assertEquals(crc.getValue(), (long) checksums.get(i));
+        }
+    }
+
+    @Test
+    void parse_without_servlet_to_async_channel() throws Exception {
+        final var output = new ByteArrayOutputStream();
+        final var closed = new AtomicBoolean();
+        final var channel = new AsyncWritableChannel() {
+            @Override
+            public CompletionStage<Void> write(final ByteBuffer buffer) {
+                return CompletableFuture.runAsync(() -> {
+                    output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    buffer.position(buffer.limit());
+                });
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        UploadParser.newParser()
+                .onPartBegin((context, buffer) -> PartOutput.from(channel))
+                .onPartEnd(context -> assertTrue(closed.getAndSet(false)))
+                .onError(this)
+                .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        assertEquals("This is the content of the file\nfieldValue", output.toString(UTF_8));
+    }
+
+    @Test
+    void parse_without_servlet_to_async_file() throws Exception {
+        final var content = "0123456789".repeat(1000);
+        final var requestData = ("------1234\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"foo.txt\"\r\n"
+                + "\r\n"
+                + content + "\r\n"
+                + "------1234--\r\n").getBytes(UTF_8);
+        final var file = Files.createTempFile("upload", ".txt");
+        try {
+            final var pool = new LeakDetectingBufferPool(BufferPool.unpooled());
+            final var ended = new AtomicBoolean();
+            UploadParser.newParser()
+                    .onPartBegin((context, buffer) -> PartOutput.from(file))
+                    .onPartEnd(context -> {
+                        assertEquals(content, Files.readString(file));
+                        ended.set(true);
+                    })
+                    .onError(this)
+                    .maxBytesUsed(1024)
+                    .bufferPool(pool)
+                    .asyncFileWrites(true)
+                    .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(requestData));
+            assertTrue(ended.get());
+            assertEquals(0, pool.getLeakCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void parse_with_coalesced_writes() throws Exception {
+        final var output = new ByteArrayOutputStream();
+        final var writes = new AtomicInteger();
+        final var channel = Channels.newChannel(output);
+        UploadParser.newParser()
+                .onPartBegin((context, buffer) -> PartOutput.from(new WritableByteChannel() {
+                    @Override
+                    public int write(final ByteBuffer src) throws IOException {
+                        writes.incrementAndGet();
+                        return channel.write(src);
+                    }
+
+                    @Override
+                    public boolean isOpen() {
+                        return true;
+                    }
+
+                    @Override
+                    public void close() {
+                        // Keep the shared channel open
+                    }
+                }))
+                .onError(this)
+                .maxBytesUsed(64)
+                .coalesceWrites(1024)
+                .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        assertEquals("This is the content of the file\nfieldValue", output.toString(UTF_8));
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    void parse_with_direct_coalesced_writes() throws Exception {
+        final var output = new ByteArrayOutputStream();
+        final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+        final var channel = Channels.newChannel(output);
+        UploadParser.newParser()
+                .onPartBegin((context, buffer) -> PartOutput.from(new WritableByteChannel() {
+                    @Override
+                    public int write(final ByteBuffer src) throws IOException {
+                        assertTrue(src.isDirect());
+                        return channel.write(src);
+                    }
+
+                    @Override
+                    public boolean isOpen() {
+                        return true;
+                    }
+
+                    @Override
+                    public void close() {
+                        // Keep the shared channel open
+                    }
+                }))
+                .onError(this)
+                .maxBytesUsed(64)
+                .bufferPool(pool)
+                .coalesceWrites(1024)
+                .directBuffers(true)
+                .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        assertEquals("This is the content of the file\nfieldValue", output.toString(UTF_8));
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    void skipped_parts_should_not_be_decoded() throws Exception {
+        final var body = ("------1234\r\n"
+                + "Content-Disposition: form-data; name=\"skipped\"; filename=\"foo.txt\"\r\n"
+                + "Content-Transfer-Encoding: quoted-printable\r\n"
+                + "\r\n"
+                + "a".repeat(1000) + "=ZZ\r\n"
+                + "------1234\r\n"
+                + "Content-Disposition: form-data; name=\"field\"\r\n"
+                + "\r\n"
+                + "fieldValue\r\n"
+                + "------1234--\r\n").getBytes(UTF_8);
+        final var output = new ByteArrayOutputStream();
+        final var error = new AtomicReference<Throwable>();
+        final var context = UploadParser.newParser()
+                .onPartBegin((ctx, buffer) -> "skipped".equals(ctx.getCurrentPart().getName()) ? PartOutput.skip() : PartOutput.from(output))
+                .onError((ctx, throwable) -> error.set(throwable))
+                .maxBytesUsed(256)
+                .strictQuotedPrintable(true)
+                .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(body));
+        assertNull(error.get());
+        assertEquals("fieldValue", output.toString(UTF_8));
+        assertEquals(2, context.getPartStreams().size());
+        assertTrue(context.getPartStreams().get(0).getKnownSize() < 1000);
+    }
+
+    @Test
+    void part_headers_should_choose_the_output_before_the_body() throws Exception {
+        final var output = new ByteArrayOutputStream();
+        final var begun = new ArrayList<String>();
+        final var context = UploadParser.newParser()
+                .onPartHeaders(ctx -> "file".equals(ctx.getCurrentPart().getName()) ? PartOutput.from(output) : null)
+                .onPartBegin((ctx, buffer) -> {
+                    begun.add(ctx.getCurrentPart().getName());
+                    return onPartBegin(ctx, buffer);
+                })
+                .onError(this)
+                .sizeThreshold(1024)
+                .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        assertEquals("This is the content of the file\n", output.toString(UTF_8));
+        assertEquals(List.of("field"), begun);
+        assertEquals("fieldValue", strings.get(0).toString(UTF_8));
+        assertEquals(32, context.getPartStreams().get(0).getKnownSize());
+    }
+
+    @Test
+    void part_headers_should_be_able_to_reject_the_request() throws Exception {
+        final var error = new AtomicReference<Throwable>();
+        UploadParser.newParser()
+                .onPartHeaders(ctx -> {
+                    if ("field".equals(ctx.getCurrentPart().getName())) {
+                        throw new MultipartException("Unexpected part!");
+                    }
+                    return PartOutput.skip();
+                })
+                .onPartBegin(this)
+                .onError((ctx, throwable) -> error.set(throwable))
+                .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        assertEquals("Unexpected part!", error.get().getMessage());
+        assertTrue(strings.isEmpty());
+    }
+
+    @Test
+    void parse_without_servlet_invalid_content_type() {
+        assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().doBlockingParse("text/plain", new ByteArrayInputStream(REQUEST_DATA)));
+    }
+
+    @Test
+    void parse_part_larger_than_two_gigabytes() throws Exception {
+        final var request = Servlets.newRequest();
+        final var inputStream = new GeneratedServletInputStream(LARGE_PART_SIZE);
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getContentLengthLong()).thenReturn(inputStream.getLength());
+        when(request.getInputStream()).thenReturn(inputStream);
+
+        final var context = UploadParser.newParser()
+                .maxBytesUsed(1024 * 1024)
+                .maxPartSize(LARGE_PART_SIZE)
+                .maxRequestSize(inputStream.getLength())
+                .doBlockingParse(request);
+        assertEquals(1, context.getPartStreams().size());
+        assertEquals(LARGE_PART_SIZE, context.getPartStreams().get(0).getKnownSize());
+    }
+
+    @Test
+    void part_larger_than_two_gigabytes_should_exceed_the_limit() throws Exception {
+        final var request = Servlets.newRequest();
+        final var inputStream = new GeneratedServletInputStream(LARGE_PART_SIZE);
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getContentLengthLong()).thenReturn(inputStream.getLength());
+        when(request.getInputStream()).thenReturn(inputStream);
+
+        final var error = new AtomicReference<Throwable>();
+        UploadParser.newParser()
+                .onError((context, throwable) -> error.set(throwable))
+                .maxBytesUsed(1024 * 1024)
+                .maxPartSize(LARGE_PART_SIZE - 1)
+                .doBlockingParse(request);
+        final var exception = assertInstanceOf(PartSizeException.class, error.get());
+        assertEquals(LARGE_PART_SIZE - 1, exception.getPermittedSize());
+        assertTrue(exception.getActualSize() > Integer.MAX_VALUE);
+    }
+
+    @Test
+    void buffers_should_be_released_after_parsing() throws Exception {
+        final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+        final var context = UploadParser.newParser()
+                .onPartBegin(this)
+                .onPartEnd(this)
+                .onError(this)
+                .bufferPool(pool)
+                .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        assertParsed(context);
+        assertEquals(3, pool.getAcquireCount());
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    void buffers_should_be_released_after_an_error() throws Exception {
+        final var pool = new LeakDetectingBufferPool(BufferPool.striped());
+        final var error = new AtomicReference<Throwable>();
+        UploadParser.newParser()
+                .onError((context, throwable) -> error.set(throwable))
+                .bufferPool(pool)
+                .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(Arrays.copyOf(REQUEST_DATA, 100)));
+        assertInstanceOf(MultipartException.class, error.get());
+        assertEquals(3, pool.getAcquireCount());
+        assertEquals(0, pool.getLeakCount());
+
+        assertThrows(IOException.class, () -> UploadParser.newParser()
+                .onError((context, throwable) -> {
+                    throw new IOException(throwable);
+                })
+                .bufferPool(pool)
+                .doBlockingParse(CONTENT_TYPE, new ByteArrayInputStream(Arrays.copyOf(REQUEST_DATA, 100))));
+        assertEquals(6, pool.getAcquireCount());
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void virtual_thread_parse_should_complete_through_the_callback() throws Exception {
+        final var request = Servlets.newRequest();
+        final var inputStream = new GeneratedServletInputStream(1024);
+        final var pool = new LeakDetectingBufferPool(BufferPool.unpooled());
+        final var result = new CompletableFuture<UploadContext>();
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getContentLengthLong()).thenReturn(inputStream.getLength());
+        when(request.getInputStream()).thenReturn(inputStream);
+
+        UploadParser.newParser()
+                .onRequestComplete(context -> {
+                    assertTrue(Thread.currentThread().getName().startsWith("upload-parser-"));
+                    result.complete(context);
+                })
+                .onError((context, throwable) -> result.completeExceptionally(throwable))
+                .bufferPool(pool)
+                .setupVirtualThreadParse(request);
+
+        final var context = result.get(10, TimeUnit.SECONDS);
+        assertEquals(1, context.getPartStreams().size());
+        assertEquals(1024, context.getPartStreams().get(0).getKnownSize());
+        verify(request).startAsync();
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void virtual_thread_parse_should_complete_the_request_if_the_error_callback_fails() throws Exception {
+        final var request = Servlets.newRequest();
+        final var response = Servlets.newResponse();
+        final var asyncContext = mock(AsyncContext.class);
+        final var inputStream = new GeneratedServletInputStream(1024);
+        final var pool = new LeakDetectingBufferPool(BufferPool.unpooled());
+        final var completed = new CompletableFuture<Void>();
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(GeneratedServletInputStream.CONTENT_TYPE);
+        when(request.getContentLengthLong()).thenReturn(inputStream.getLength());
+        when(request.getInputStream()).thenReturn(inputStream);
+        when(request.getAsyncContext()).thenReturn(asyncContext);
+        when(asyncContext.getResponse()).thenReturn(response);
+        doAnswer(invocation -> completed.complete(null)).when(asyncContext).complete();
+
+        UploadParser.newParser()
+                .onRequestComplete(context -> {
+                    throw new IOException("Request callback failed");
+                })
+                .onError((context, throwable) -> {
+                    throw new IOException("Error callback failed", throwable);
+                })
+                .bufferPool(pool)
+                .setupVirtualThreadParse(request);
+
+        completed.get(10, TimeUnit.SECONDS);
+        verify(response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    void virtual_thread_parse_should_fail_without_virtual_threads() throws Exception {
+        final var request = Servlets.newRequest();
+        final var pool = new LeakDetectingBufferPool(BufferPool.unpooled());
+
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn(CONTENT_TYPE);
+
+        assertThrows(UnsupportedOperationException.class, () -> UploadParser.newParser().bufferPool(pool).setupVirtualThreadParse(request));
+        verify(request, never()).startAsync();
+        assertEquals(0, pool.getAcquireCount());
+    }
+
+    private void assertParsed(final UploadContext context) {
+        assertNull(context.getRequest());
+        assertEquals(2, context.getPartStreams().size());
+        assertEquals("file", context.getPartStreams().get(0).getName());
+        assertEquals("field", context.getPartStreams().get(1).getName());
+        assertEquals("This is the content of the file\n", strings.get(0).toString(UTF_8));
+        assertEquals("fieldValue", strings.get(1).toString(UTF_8));
+    }
+
     @Override
     public PartOutput onPartBegin(final UploadContext context, final ByteBuffer buffer) {
         final var baos = new ByteArrayOutputStream();
@@ -0,0 +1,140 @@
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+class BoundaryScannerTest {
+
+    private static final byte[] BOUNDARY = "\r\n--unique-boundary-1".getBytes(ISO_8859_1);
+
+    private static int[] lengthProvider() {
+        return new int[]{0, 1, 2, 15, 16, 17, 31, 32, 33, 63, 64, 65, 1000};
+    }
+
+    @ParameterizedTest
+    @MethodSource("lengthProvider")
+    void no_candidate_returns_the_end_index(final int length) {
+        final var array = new byte[length];
+        Arrays.fill(array, (byte) 'a');
+        assertEquals(length, BoundaryScanner.Algorithm.VECTOR.create(BOUNDARY).indexOf(array, 0, length));
+    }
+
+    @ParameterizedTest
+    @MethodSource("lengthProvider")
+    void candidate_is_found_at_every_position(final int length) {
+        final var scanner = BoundaryScanner.Algorithm.VECTOR.create(BOUNDARY);
+        for (var i = 0; i < length - 1; i++) {
+            final var array = new byte[length];
+            Arrays.fill(array, (byte) 'a');
+            array[i] = '\r';
+            array[i + 1] = '\n';
+            assertEquals(i, scanner.indexOf(array, 0, length));
+        }
+    }
+
+    @Test
+    void carriage_return_at_the_end_is_a_candidate() {
+        final var array = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\r".getBytes(ISO_8859_1);
+        assertEquals(array.length - 1, BoundaryScanner.Algorithm.VECTOR.create(BOUNDARY).indexOf(array, 0, array.length));
+    }
+
+    @Test
+    void carriage_return_without_line_feed_is_skipped() {
+        final var array = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\ra\r\raaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\r\naaaaa".getBytes(ISO_8859_1);
+        assertEquals(77, BoundaryScanner.Algorithm.VECTOR.create(BOUNDARY).indexOf(array, 0, array.length));
+    }
+
+    @Test
+    void range_limits_are_respected() {
+        final var array = "\r\naaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\r\naaa".getBytes(ISO_8859_1);
+        assertEquals(72, BoundaryScanner.Algorithm.VECTOR.create(BOUNDARY).indexOf(array, 1, array.length));
+        assertEquals(72, BoundaryScanner.Algorithm.VECTOR.create(BOUNDARY).indexOf(array, 1, 73));
+        assertEquals(50, BoundaryScanner.Algorithm.VECTOR.create(BOUNDARY).indexOf(array, 1, 50));
+    }
+
+    @Test
+    void result_matches_the_scalar_implementation() {
+        final var random = new Random(42);
+        final var scanner = BoundaryScanner.Algorithm.VECTOR.create(BOUNDARY);
+        final var scalar = BoundaryScanner.Algorithm.SCALAR.create(BOUNDARY);
+        for (var i = 0; i < 1000; i++) {
+            final var array = new byte[random.nextInt(300)];
+            random.nextBytes(array);
+            for (var j = 0; j < array.length; j += 1 + random.nextInt(100)) {
+                array[j] = '\r';
+            }
+            final var from = array.length == 0 ? 0 : random.nextInt(array.length);
+            assertEquals(scalar.indexOf(array, from, array.length), scanner.indexOf(array, from, array.length));
+        }
+    }
+
+    @Test
+    void horspool_finds_the_full_boundary() {
+        final var array = "aaaa\r\naaaa\r\n--unique-boundaryaaaaaaa\r\n--unique-boundary-1aaaa".getBytes(ISO_8859_1);
+        assertEquals(36, BoundaryScanner.Algorithm.HORSPOOL.create(BOUNDARY).indexOf(array, 0, array.length));
+    }
+
+    @Test
+    void horspool_stops_before_a_partial_boundary_at_the_end() {
+        final var array = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\r\n--uniq".getBytes(ISO_8859_1);
+        final var index = BoundaryScanner.Algorithm.HORSPOOL.create(BOUNDARY).indexOf(array, 0, array.length);
+        assertTrue(index <= 52);
+        assertTrue(index > array.length - BOUNDARY.length);
+    }
+
+    @Test
+    void horspool_never_skips_a_possible_boundary() {
+        final var random = new Random(42);
+        final var scanner = BoundaryScanner.Algorithm.HORSPOOL.create(BOUNDARY);
+        for (var i = 0; i < 1000; i++) {
+            final var array = new byte[random.nextInt(300)];
+            for (var j = 0; j < array.length; j++) {
+                array[j] = BOUNDARY[random.nextInt(BOUNDARY.length)];
+            }
+            if (array.length > BOUNDARY.length && random.nextBoolean()) {
+                final var position = random.nextInt(array.length - BOUNDARY.length);
+                System.arraycopy(BOUNDARY, 0, array, position, BOUNDARY.length);
+            }
+            final var expected = firstPossibleBoundary(array);
+            final var index = scanner.indexOf(array, 0, array.length);
+            assertTrue(index <= expected);
+            assertTrue(index == expected || index > array.length - BOUNDARY.length);
+        }
+    }
+
+    @Test
+    void horspool_scanners_are_cached() {
+        assertSame(BoundaryScanner.Algorithm.HORSPOOL.create(BOUNDARY), BoundaryScanner.Algorithm.HORSPOOL.create(BOUNDARY.clone()));
+    }
+
+    @Test
+    void horspool_cache_never_mixes_up_boundaries() {
+        for (var i = 0; i < 1000; i++) {
+            final var boundary = ("\r\n--boundary-" + i).getBytes(ISO_8859_1);
+            final var array = ("aaaa\r\n--boundary-" + (i + 1) + "\r\n--boundary-" + i).getBytes(ISO_8859_1);
+            assertEquals(array.length - boundary.length, BoundaryScanner.Algorithm.HORSPOOL.create(boundary).indexOf(array, 0, array.length));
+        }
+    }
+
+    private static int firstPossibleBoundary(final byte[] array) {
+        for (var i = 0; i < array.length; i++) {
+            var length = 0;
+            while (length < BOUNDARY.length && i + length < array.length && array[i + length] == BOUNDARY[length]) {
+                length++;
+            }
+            if (length == BOUNDARY.length || i + length == array.length) {
+                return i;
+            }
+        }
+        return array.length;
+    }
+}
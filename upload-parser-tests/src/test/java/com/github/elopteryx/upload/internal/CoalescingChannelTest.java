@@ -0,0 +1,104 @@
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+class CoalescingChannelTest {
+
+    /**
+     * Records each call, the gathering writes only take the first few bytes of the second buffer.
+     */
+    private static final class RecordingChannel implements GatheringByteChannel {
+
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private final List<String> calls = new ArrayList<>();
+        private boolean open = true;
+
+        @Override
+        public int write(final ByteBuffer src) {
+            calls.add("write " + src.remaining());
+            return take(src, src.remaining());
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs, final int offset, final int length) {
+            calls.add("gather " + srcs[offset].remaining() + " " + srcs[offset + 1].remaining());
+            return take(srcs[offset], srcs[offset].remaining()) + take(srcs[offset + 1], 2);
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        private int take(final ByteBuffer buffer, final int count) {
+            final var bytes = new byte[Math.min(count, buffer.remaining())];
+            buffer.get(bytes);
+            output.writeBytes(bytes);
+            return bytes.length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            calls.add("close");
+            open = false;
+        }
+    }
+
+    private static ByteBuffer bytes(final String value) {
+        return ByteBuffer.wrap(value.getBytes(US_ASCII));
+    }
+
+    @Test
+    void small_writes_should_be_written_on_close() throws Exception {
+        final var recording = new RecordingChannel();
+        final var channel = new CoalescingChannel(recording, ByteBuffer.allocate(16));
+        assertEquals(3, channel.write(bytes("abc")));
+        assertEquals(2, channel.write(bytes("de")));
+        assertEquals(List.of(), recording.calls);
+        channel.close();
+        assertEquals(List.of("write 5", "close"), recording.calls);
+        assertEquals("abcde", recording.output.toString(US_ASCII));
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    void buffered_data_should_be_gathered_with_the_next_write() throws Exception {
+        final var recording = new RecordingChannel();
+        final var channel = new CoalescingChannel(recording, ByteBuffer.allocate(8));
+        channel.write(bytes("abcdef"));
+        final var src = bytes("0123456789");
+        assertEquals(10, channel.write(src));
+        assertEquals(0, src.remaining());
+        channel.close();
+        assertEquals(List.of("gather 6 10", "write 8", "close"), recording.calls);
+        assertEquals("abcdef0123456789", recording.output.toString(US_ASCII));
+    }
+
+    @Test
+    void large_writes_should_bypass_the_buffer() throws Exception {
+        final var output = new ByteArrayOutputStream();
+        final var channel = new CoalescingChannel(Channels.newChannel(output), ByteBuffer.allocate(4));
+        channel.write(bytes("ab"));
+        channel.write(bytes("0123456789"));
+        assertEquals("ab0123456789", output.toString(US_ASCII));
+        channel.write(bytes("x"));
+        channel.close();
+        assertEquals("ab0123456789x", output.toString(US_ASCII));
+    }
+}
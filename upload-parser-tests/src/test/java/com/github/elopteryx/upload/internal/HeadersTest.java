@@ -7,7 +7,9 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 
 class HeadersTest {
@@ -61,6 +63,37 @@ class HeadersTest {
         assertFalse(headerValues.hasNext());
     }
 
+    @Test
+    void retrieve_headers_from_bytes() {
+        final var bytes = "CONTENT-TYPEtext/plainX-TestheaderValue1Content-Dispositionform-data; name=\"f\"x-testHEADERValue2"
+                .getBytes(StandardCharsets.US_ASCII);
+        final var offsets = new int[]{0, 12, 12, 22, 22, 34, 34, 40, 40, 59, 59, 78, 78, 90, 90, 96};
+        final var headers = new Headers(bytes, offsets, 4, StandardCharsets.US_ASCII);
+
+        assertEquals("text/plain", headers.getHeader(Headers.CONTENT_TYPE));
+        assertEquals("form-data; name=\"f\"", headers.getHeader("content-disposition"));
+        assertEquals(List.of("Value1", "Value2"), List.copyOf(headers.getHeaders("X-TestHeader")));
+        assertNull(headers.getHeader("X-Test"));
+        assertEquals(List.of("content-type", "x-testheader", "content-disposition"), List.copyOf(headers.getHeaderNames()));
+
+        assertTrue(headers.headerStartsWith(Headers.CONTENT_DISPOSITION, "form-data"));
+        assertFalse(headers.headerStartsWith(Headers.CONTENT_TYPE, "form-data"));
+        assertFalse(headers.headerStartsWith(Headers.CONTENT_ENCODING, "form-data"));
+
+        headers.addHeader("X-TestHeader", "Value3");
+        assertEquals(List.of("Value1", "Value2", "Value3"), List.copyOf(headers.getHeaders("x-testheader")));
+    }
+
+    @Test
+    void match_known_names() {
+        final var bytes = "xContent-Type:CONTENT-DISPOSITION:content-length:Content-Typo".getBytes(StandardCharsets.US_ASCII);
+        assertEquals("content-type", Headers.knownName(bytes, 1, 13));
+        assertEquals("content-disposition", Headers.knownName(bytes, 14, 33));
+        assertEquals("content-length", Headers.knownName(bytes, 34, 48));
+        assertNull(Headers.knownName(bytes, 49, 61));
+        assertNull(Headers.knownName(bytes, 0, 13));
+    }
+
     @Test
     void charset_parsing() {
         assertNull(Headers.extractQuotedValueFromHeader("text/html; other-data=\"charset=UTF-8\"", "charset"));
@@ -76,6 +109,13 @@ class HeadersTest {
         assertEquals("--xyz", Headers.extractBoundaryFromHeader("multipart/form-data; boundary=--xyz; param=abc"));
     }
 
+    @Test
+    void extract_charset() {
+        assertEquals("UTF-8", Headers.extractCharsetFromHeader("multipart/form-data; charset=UTF-8; boundary=--xyz"));
+        assertEquals("UTF-8", Headers.extractCharsetFromHeader("multipart/form-data; boundary=--xyz; charset=\"UTF-8\""));
+        assertNull(Headers.extractCharsetFromHeader("multipart/form-data; boundary=--xyz"));
+    }
+
     @Test
     void extract_missing_boundary() {
         assertNull(Headers.extractBoundaryFromHeader("multipart/form-data; boundary;"));
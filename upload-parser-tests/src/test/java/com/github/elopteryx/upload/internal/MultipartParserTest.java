@@ -22,6 +22,10 @@ class MultipartParserTest {
         return new int[]{2, 10, 1024, 4096};
     }
 
+    private static BoundaryScanner.Algorithm[] algorithmProvider() {
+        return BoundaryScanner.Algorithm.values();
+    }
+
     @ParameterizedTest
     @MethodSource("bufferSizeProvider")
     void mime_decoding_with_preamble(final int bufferSize) throws IOException {
@@ -106,6 +110,71 @@ class MultipartParserTest {
         assertEquals("text/plain", handler.parts.get(0).map.getHeader(Headers.CONTENT_TYPE));
     }
 
+    @ParameterizedTest
+    @MethodSource("bufferSizeProvider")
+    void mime_decoding_from_direct_buffer(final int bufferSize) throws IOException {
+        final var data = fixLineEndings(FileUtils.readFile(MultipartParserTest.class, "mime3.txt")).getBytes();
+        final var handler = new MockPartHandler();
+        final var parser = MultipartParser.beginParse(handler, "unique-boundary-1".getBytes(), bufferSize, ISO_8859_1);
+
+        final var buf = ByteBuffer.allocateDirect(data.length);
+        buf.put(data).flip();
+        parser.parse(buf);
+        assertTrue(parser.isComplete());
+        assertEquals(2, handler.parts.size());
+        assertEquals("This is some base64 text.", handler.parts.get(0).data.toString());
+        assertEquals("This is some more base64 text.", handler.parts.get(1).data.toString());
+    }
+
+    @ParameterizedTest
+    @MethodSource("bufferSizeProvider")
+    void mime_decoding_with_header_variations(final int chunkSize) throws IOException {
+        final var longValue = "x".repeat(1000);
+        final var bytes = ("--unique-boundary-1\r\n"
+                + "content-TYPE:text/plain  \r\n"
+                + "  X-Custom-Header \t:\t" + longValue + "\r\n"
+                + "X-Custom-Header:second\r\n"
+                + "\r\n"
+                + "Here is some text.\r\n"
+                + "--unique-boundary-1--\r\n").getBytes(ISO_8859_1);
+        for (final var direct : new boolean[]{false, true}) {
+            final var handler = new MockPartHandler();
+            final var parser = MultipartParser.beginParse(handler, "unique-boundary-1".getBytes(), 1024, ISO_8859_1);
+            for (var i = 0; i < bytes.length; i += chunkSize) {
+                final var length = Math.min(chunkSize, bytes.length - i);
+                final var buf = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+                buf.put(bytes, i, length).flip();
+                parser.parse(buf);
+            }
+            assertTrue(parser.isComplete());
+            assertEquals(1, handler.parts.size());
+            final var headers = handler.parts.get(0).map;
+            assertEquals("text/plain", headers.getHeader(Headers.CONTENT_TYPE));
+            assertEquals(List.of("content-type", "x-custom-header"), List.copyOf(headers.getHeaderNames()));
+            assertEquals(List.of(longValue, "second"), List.copyOf(headers.getHeaders("x-custom-header")));
+            assertEquals("Here is some text.", handler.parts.get(0).data.toString());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithmProvider")
+    void mime_decoding_with_every_algorithm(final BoundaryScanner.Algorithm algorithm) throws IOException {
+        final var data = fixLineEndings(FileUtils.readFile(MultipartParserTest.class, "mime1.txt"));
+        for (final var chunkSize : bufferSizeProvider()) {
+            final var handler = new MockPartHandler();
+            final var parser = MultipartParser.beginParse(handler, "unique-boundary-1".getBytes(), 1024, ISO_8859_1, algorithm);
+
+            final var bytes = data.getBytes();
+            for (var i = 0; i < bytes.length; i += chunkSize) {
+                parser.parse(ByteBuffer.wrap(bytes, i, Math.min(chunkSize, bytes.length - i)));
+            }
+            assertTrue(parser.isComplete());
+            assertEquals(2, handler.parts.size());
+            assertEquals("Here is some text.", handler.parts.get(0).data.toString());
+            assertEquals("Here is some more text.", handler.parts.get(1).data.toString());
+        }
+    }
+
     @ParameterizedTest
     @MethodSource("bufferSizeProvider")
     void mime_decoding_malformed(final int bufferSize) throws IOException {
@@ -2,7 +2,9 @@ package com.github.elopteryx.upload.internal;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.github.elopteryx.upload.PartStream;
 import org.junit.jupiter.api.Test;
@@ -24,6 +26,25 @@ class PartStreamImplTest {
         assertFalse(partStream.isFinished());
     }
 
+    @Test
+    void names_should_be_extracted_from_the_headers() {
+        final var headers = new Headers();
+        headers.addHeader(Headers.CONTENT_DISPOSITION, "form-data; name=\"field\"; filename=\"file.txt\"");
+        headers.addHeader(Headers.CONTENT_TYPE, "text/plain");
+        final PartStream partStream = new PartStreamImpl(headers);
+        assertEquals("file.txt", partStream.getSubmittedFileName());
+        assertEquals("field", partStream.getName());
+        assertEquals("text/plain", partStream.getContentType());
+        assertTrue(partStream.isFile());
+
+        final var fieldHeaders = new Headers();
+        fieldHeaders.addHeader(Headers.CONTENT_DISPOSITION, "form-data; name=\"field\"");
+        final PartStream fieldStream = new PartStreamImpl(fieldHeaders);
+        assertFalse(fieldStream.isFile());
+        assertEquals("field", fieldStream.getName());
+        assertNull(fieldStream.getContentType());
+    }
+
     @Test
     void invalid_file_names_are_not_allowed() {
         final var fileName = "r-" + System.currentTimeMillis() + '\u0000';
@@ -0,0 +1,131 @@
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.elopteryx.upload.BufferPool;
+import com.github.elopteryx.upload.UploadParser;
+import com.github.elopteryx.upload.errors.MultipartException;
+import com.github.elopteryx.upload.errors.PartSizeException;
+import com.github.elopteryx.upload.util.LeakDetectingBufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+class PullUploadParserTest {
+
+    private static final String CONTENT_TYPE = "multipart/form-data; boundary=----1234";
+
+    private static final byte[] REQUEST_DATA = ("------1234\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"foo.txt\"\r\n"
+            + "Content-Type: text/whatever\r\n"
+            + "\r\n"
+            + "This is the content of the file\n"
+            + "\r\n"
+            + "------1234\r\n"
+            + "Content-Disposition: form-data; name=\"field\"\r\n"
+            + "\r\n"
+            + "fieldValue\r\n"
+            + "------1234--\r\n").getBytes(UTF_8);
+
+    @Test
+    void parts_should_be_read_as_streams() throws Exception {
+        final var pool = new LeakDetectingBufferPool(BufferPool.unpooled());
+        final var parts = UploadParser.newParser()
+                .bufferPool(pool)
+                .doPullParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        assertTrue(parts.hasNext());
+        final var file = parts.next();
+        assertEquals("file", file.getName());
+        assertEquals("foo.txt", file.getSubmittedFileName());
+        assertEquals("text/whatever", file.getContentType());
+        assertEquals("This is the content of the file\n", new String(file.getInputStream().readAllBytes(), UTF_8));
+        assertTrue(file.isFinished());
+        final var field = parts.next();
+        assertEquals("field", field.getName());
+        assertEquals("fieldValue", new String(field.getInputStream().readAllBytes(), UTF_8));
+        assertEquals(-1, file.getInputStream().read());
+        assertFalse(parts.hasNext());
+        assertThrows(NoSuchElementException.class, parts::next);
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    void unread_parts_should_be_skipped() throws Exception {
+        final var parts = UploadParser.newParser().doPullParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        final var file = parts.next();
+        assertEquals('T', file.getInputStream().read());
+        final var field = parts.next();
+        assertEquals(-1, file.getInputStream().read());
+        assertEquals("fieldValue", new String(field.getInputStream().readAllBytes(), UTF_8));
+        assertFalse(parts.hasNext());
+    }
+
+    @Test
+    void request_should_be_read_as_the_parts_are_consumed() throws Exception {
+        final var content = new byte[100_000];
+        new Random(1).nextBytes(content);
+        final var body = new ByteArrayOutputStream();
+        body.writeBytes(("------1234\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"foo.bin\"\r\n"
+                + "Content-Transfer-Encoding: base64\r\n"
+                + "\r\n").getBytes(UTF_8));
+        body.writeBytes(Base64.getMimeEncoder().encode(content));
+        body.writeBytes("\r\n------1234--\r\n".getBytes(UTF_8));
+        final var stream = new ByteArrayInputStream(body.toByteArray());
+        final var parts = UploadParser.newParser()
+                .maxBytesUsed(1024)
+                .doPullParse(CONTENT_TYPE, stream);
+        final InputStream input = parts.next().getInputStream();
+        final var start = new byte[100];
+        assertEquals(100, input.readNBytes(start, 0, 100));
+        assertArrayEquals(Arrays.copyOf(content, 100), start);
+        assertTrue(stream.available() > body.size() - 2048);
+        final var rest = input.readAllBytes();
+        assertArrayEquals(Arrays.copyOfRange(content, 100, content.length), rest);
+        assertFalse(parts.hasNext());
+    }
+
+    @Test
+    void truncated_request_should_fail() throws Exception {
+        final var pool = new LeakDetectingBufferPool(BufferPool.unpooled());
+        final var parts = UploadParser.newParser()
+                .bufferPool(pool)
+                .doPullParse(CONTENT_TYPE, new ByteArrayInputStream(Arrays.copyOf(REQUEST_DATA, 120)));
+        final var input = parts.next().getInputStream();
+        assertThrows(MultipartException.class, input::readAllBytes);
+        assertFalse(parts.hasNext());
+        assertEquals(0, pool.getLeakCount());
+    }
+
+    @Test
+    void part_size_limit_should_apply() throws Exception {
+        final var parts = UploadParser.newParser()
+                .maxPartSize(10)
+                .doPullParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        final var input = parts.next().getInputStream();
+        assertThrows(PartSizeException.class, input::readAllBytes);
+    }
+
+    @Test
+    void closing_should_release_the_buffers() throws Exception {
+        final var pool = new LeakDetectingBufferPool(BufferPool.unpooled());
+        final var parts = UploadParser.newParser()
+                .bufferPool(pool)
+                .doPullParse(CONTENT_TYPE, new ByteArrayInputStream(REQUEST_DATA));
+        parts.next();
+        parts.close();
+        assertEquals(0, pool.getLeakCount());
+        assertFalse(parts.hasNext());
+    }
+}
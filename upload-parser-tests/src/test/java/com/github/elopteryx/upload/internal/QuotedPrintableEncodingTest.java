@@ -2,11 +2,16 @@ package com.github.elopteryx.upload.internal;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.elopteryx.upload.errors.MultipartException;
 
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 class QuotedPrintableEncodingTest {
 
@@ -35,27 +40,104 @@ class QuotedPrintableEncodingTest {
         checkEncoding("=\r\n", "=3d=0d=0a");
     }
 
-    private static void checkEncoding(final String original, final String encoded) throws IOException {
-        final var encoding = new MultipartParser.QuotedPrintableEncoding(1024);
-        encoding.handle(new MultipartParser.PartHandler() {
+    @Test
+    void soft_line_breaks() throws IOException {
+        checkEncoding("A longer line", "A lon=\nger =\rline=");
+    }
 
-            @Override
-            public void beginPart(final Headers headers) {
-                // No-op
+    @Test
+    void malformed_escapes_are_kept_in_lenient_mode() throws IOException {
+        checkEncoding("a=zb=4xc===4", "a=zb=4xc==3D=4");
+    }
+
+    @Test
+    void malformed_escapes_fail_in_strict_mode() throws IOException {
+        assertThrows(MultipartException.class, () -> decode(new MultipartParser.QuotedPrintableEncoding(1024, true), 1024, "a=zb"));
+        assertThrows(MultipartException.class, () -> decode(new MultipartParser.QuotedPrintableEncoding(1024, true), 1024, "a=4xb"));
+        assertThrows(MultipartException.class, () -> decode(new MultipartParser.QuotedPrintableEncoding(1024, true), 1024, "a=4"));
+        assertEquals("a=b", decode(new MultipartParser.QuotedPrintableEncoding(1024, true), 1024, "a=3Db="));
+    }
+
+    @Test
+    void decode_escapes_split_between_chunks() throws IOException {
+        final var encoded = "Hello=3D=\nworld=0D=0A, =3d=3D";
+        for (var chunkSize = 1; chunkSize <= encoded.length(); chunkSize++) {
+            for (final var bufferSize : new int[]{1, 3, 1024}) {
+                final var encoding = new MultipartParser.QuotedPrintableEncoding(bufferSize);
+                assertEquals("Hello=world\r\n, ==", decode(encoding, chunkSize, encoded));
             }
+        }
+    }
+
+    @Test
+    void decoded_data_is_passed_in_full_buffers() throws IOException {
+        final var sizes = new ArrayList<Integer>();
+        final var encoding = new MultipartParser.QuotedPrintableEncoding(4);
+        final var handler = new CollectingHandler() {
 
             @Override
             public void data(final ByteBuffer buffer) {
-                final var parserResult = new String(buffer.array(), US_ASCII).trim();
-                assertEquals(parserResult, original.trim());
+                sizes.add(buffer.remaining());
+                super.data(buffer);
             }
+        };
+        encoding.handle(handler, ByteBuffer.wrap("abc".getBytes(US_ASCII)));
+        encoding.handle(handler, ByteBuffer.wrap("de=3Dfghij".getBytes(US_ASCII)));
+        assertEquals(List.of(4, 4), sizes);
+        encoding.finish(handler);
+        assertEquals(List.of(4, 4, 3), sizes);
+        assertEquals("abcde=fghij", handler.result.toString());
+    }
 
-            @Override
-            public void endPart() {
-                // No-op
+    @Test
+    void decode_with_small_buffer() throws IOException {
+        final var encoded = "a=3Db=3Dc=3D".getBytes(US_ASCII);
+        final var heap = ByteBuffer.wrap(encoded);
+        final var direct = ByteBuffer.allocateDirect(encoded.length);
+        direct.put(encoded).flip();
+        for (final var rawData : new ByteBuffer[]{heap, direct}) {
+            final var handler = new CollectingHandler();
+            final var encoding = new MultipartParser.QuotedPrintableEncoding(2);
+            encoding.handle(handler, rawData);
+            encoding.finish(handler);
+            assertEquals("a=b=c=", handler.result.toString());
+        }
+    }
+
+    private static void checkEncoding(final String original, final String encoded) throws IOException {
+        assertEquals(original, decode(new MultipartParser.QuotedPrintableEncoding(1024), 1024, encoded));
+    }
+
+    private static String decode(final MultipartParser.QuotedPrintableEncoding encoding, final int chunkSize, final String encoded) throws IOException {
+        final var bytes = encoded.getBytes(US_ASCII);
+        final var handler = new CollectingHandler();
+        for (var offset = 0; offset < bytes.length; offset += chunkSize) {
+            encoding.handle(handler, ByteBuffer.wrap(bytes, offset, Math.min(chunkSize, bytes.length - offset)));
+        }
+        encoding.finish(handler);
+        return handler.result.toString();
+    }
+
+    private static class CollectingHandler implements MultipartParser.PartHandler {
+
+        final StringBuilder result = new StringBuilder();
+
+        @Override
+        public void beginPart(final Headers headers) {
+            // No-op
+        }
+
+        @Override
+        public void data(final ByteBuffer buffer) {
+            while (buffer.hasRemaining()) {
+                result.append((char) buffer.get());
             }
+        }
 
-        }, ByteBuffer.wrap(encoded.getBytes(US_ASCII)));
+        @Override
+        public void endPart() {
+            // No-op
+        }
     }
 
 }
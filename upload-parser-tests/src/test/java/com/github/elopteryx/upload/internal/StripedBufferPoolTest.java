@@ -0,0 +1,98 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.elopteryx.upload.BufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+class StripedBufferPoolTest {
+
+    @Test
+    void buffers_should_be_rounded_up_to_the_size_classes() {
+        final var pool = BufferPool.striped(4096, 4);
+        assertEquals(256, pool.acquire(0, false).capacity());
+        assertEquals(256, pool.acquire(256, false).capacity());
+        assertEquals(512, pool.acquire(257, false).capacity());
+        assertEquals(4096, pool.acquire(3000, false).capacity());
+        assertEquals(5000, pool.acquire(5000, false).capacity());
+    }
+
+    @Test
+    void released_buffers_should_be_reused() {
+        final var pool = BufferPool.striped(4096, 4);
+        final var buffer = pool.acquire(1000, false);
+        buffer.put((byte) 1).limit(10);
+        pool.release(buffer);
+        final var reused = pool.acquire(1024, false);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(reused.capacity(), reused.limit());
+        assertNotSame(buffer, pool.acquire(1024, false));
+    }
+
+    @Test
+    void heap_and_direct_buffers_should_be_kept_separately() {
+        final var pool = BufferPool.striped(4096, 4);
+        final var heap = pool.acquire(1024, false);
+        final var direct = pool.acquire(1024, true);
+        assertTrue(heap.hasArray());
+        assertTrue(direct.isDirect());
+        pool.release(heap);
+        pool.release(direct);
+        assertSame(direct, pool.acquire(1024, true));
+        assertSame(heap, pool.acquire(1024, false));
+    }
+
+    @Test
+    void pool_should_be_bounded() {
+        final var pool = BufferPool.striped(4096, 2);
+        final var first = pool.acquire(1024, false);
+        final var second = pool.acquire(1024, false);
+        final var third = pool.acquire(1024, false);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        assertSame(second, pool.acquire(1024, false));
+        assertSame(first, pool.acquire(1024, false));
+        final var allocated = pool.acquire(1024, false);
+        assertNotSame(first, allocated);
+        assertNotSame(second, allocated);
+        assertNotSame(third, allocated);
+    }
+
+    @Test
+    void foreign_and_large_buffers_should_not_be_pooled() {
+        final var pool = BufferPool.striped(4096, 4);
+        final var large = pool.acquire(8192, false);
+        pool.release(large);
+        pool.release(ByteBuffer.allocate(1000));
+        pool.release(ByteBuffer.allocate(1024).asReadOnlyBuffer());
+        assertNotSame(large, pool.acquire(8192, false));
+        final var buffer = pool.acquire(1000, false);
+        assertEquals(1024, buffer.capacity());
+        assertFalse(buffer.isReadOnly());
+    }
+
+    @Test
+    void invalid_parameters_should_be_rejected() {
+        assertThrows(IllegalArgumentException.class, () -> BufferPool.striped(0, 4));
+        assertThrows(IllegalArgumentException.class, () -> BufferPool.striped(4096, 0));
+    }
+
+    @Test
+    void unpooled_buffers_should_have_the_exact_size() {
+        final var pool = BufferPool.unpooled();
+        final var buffer = pool.acquire(1000, false);
+        assertEquals(1000, buffer.capacity());
+        pool.release(buffer);
+        assertNotSame(buffer, pool.acquire(1000, false));
+        assertTrue(pool.acquire(1000, true).isDirect());
+    }
+}
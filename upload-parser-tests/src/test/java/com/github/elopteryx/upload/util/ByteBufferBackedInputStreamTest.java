@@ -13,13 +13,16 @@ class ByteBufferBackedInputStreamTest {
     private static final String TEST_TEXT = "Test text.";
 
     @Test
-    void create_with_direct() {
-        assertThrows(IllegalArgumentException.class, () -> new ByteBufferBackedInputStream(ByteBuffer.allocate(0).asReadOnlyBuffer()));
+    void read_from_direct() throws Exception {
+        final var buffer = ByteBuffer.allocateDirect(TEST_TEXT.length()).put(TEST_TEXT.getBytes()).flip();
+        final var stream = new ByteBufferBackedInputStream(buffer);
+        assertEquals(TEST_TEXT, new String(stream.readAllBytes()));
     }
 
     @Test
-    void create_with_read_only() {
-        assertThrows(IllegalArgumentException.class, () -> new ByteBufferBackedInputStream(ByteBuffer.allocateDirect(0)));
+    void read_from_read_only() throws Exception {
+        final var stream = new ByteBufferBackedInputStream(ByteBuffer.wrap(TEST_TEXT.getBytes()).asReadOnlyBuffer());
+        assertEquals(TEST_TEXT, new String(stream.readAllBytes()));
     }
 
     @Test
@@ -14,13 +14,18 @@ class ByteBufferBackedOutputStreamTest {
     private static final String TEST_TEXT = "Test text.";
 
     @Test
-    void create_with_direct() {
-        assertThrows(IllegalArgumentException.class, () -> new ByteBufferBackedOutputStream(ByteBuffer.allocate(0).asReadOnlyBuffer()));
+    void write_to_direct() throws Exception {
+        final var buffer = ByteBuffer.allocateDirect(1024);
+        final var stream = new ByteBufferBackedOutputStream(buffer);
+        stream.write(TEST_TEXT.getBytes());
+        final var bytes = new byte[buffer.flip().remaining()];
+        buffer.get(bytes);
+        assertEquals(TEST_TEXT, new String(bytes));
     }
 
     @Test
     void create_with_read_only() {
-        assertThrows(IllegalArgumentException.class, () -> new ByteBufferBackedOutputStream(ByteBuffer.allocateDirect(0)));
+        assertThrows(IllegalArgumentException.class, () -> new ByteBufferBackedOutputStream(ByteBuffer.allocate(0).asReadOnlyBuffer()));
     }
 
     @Test
@@ -0,0 +1,103 @@
+package com.github.elopteryx.upload.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+
+/**
+ * Servlet input stream for a multipart body with a single file part of the given size.
+ * The content of the part is generated while reading, so parts larger than
+ * the available memory can be streamed through the parsers.
+ */
+public class GeneratedServletInputStream extends ServletInputStream {
+
+    public static final String CONTENT_TYPE = "multipart/form-data; boundary=----1234";
+
+    private static final byte[] HEAD = ("------1234\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"large.bin\"\r\n"
+            + "Content-Type: application/octet-stream\r\n"
+            + "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] TAIL = "\r\n------1234--\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte CONTENT = 'a';
+
+    private final long partSize;
+
+    private final long length;
+
+    private long position;
+
+    private ReadListener readListener;
+
+    public GeneratedServletInputStream(final long partSize) {
+        this.partSize = partSize;
+        this.length = HEAD.length + partSize + TAIL.length;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public ReadListener getReadListener() {
+        return readListener;
+    }
+
+    @Override
+    public int read() {
+        if (position == length) {
+            return -1;
+        }
+        final var next = byteAt(position);
+        position++;
+        return next;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int count) {
+        if (position == length) {
+            return -1;
+        }
+        final var end = offset + (int) Math.min(count, length - position);
+        var index = offset;
+        while (index < end && position < HEAD.length) {
+            bytes[index++] = HEAD[(int) position++];
+        }
+        final var contentEnd = HEAD.length + partSize;
+        if (index < end && position < contentEnd) {
+            final var contentCount = (int) Math.min(end - index, contentEnd - position);
+            Arrays.fill(bytes, index, index + contentCount, CONTENT);
+            index += contentCount;
+            position += contentCount;
+        }
+        while (index < end) {
+            bytes[index++] = TAIL[(int) (position++ - contentEnd)];
+        }
+        return end - offset;
+    }
+
+    private int byteAt(final long index) {
+        if (index < HEAD.length) {
+            return HEAD[(int) index];
+        } else if (index < HEAD.length + partSize) {
+            return CONTENT;
+        }
+        return TAIL[(int) (index - HEAD.length - partSize)];
+    }
+
+    @Override
+    public boolean isFinished() {
+        return position == length;
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public void setReadListener(final ReadListener readListener) {
+        this.readListener = readListener;
+    }
+}
@@ -9,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.nio.channels.ClosedChannelException;
 
 class InputStreamBackedChannelTest {
@@ -25,11 +26,16 @@ class InputStreamBackedChannelTest {
     }
 
     @Test
-    void try_to_read_to_direct_buffer() {
+    void read_to_direct_buffer() throws IOException {
         final var stream = new ByteArrayInputStream(TEST_TEXT.getBytes());
         final var channel = new InputStreamBackedChannel(stream);
         final var buffer = ByteBuffer.allocateDirect(1024);
-        assertThrows(IllegalArgumentException.class, () -> channel.read(buffer));
+        assertEquals(TEST_TEXT.length(), channel.read(buffer));
+        final var bytes = new byte[buffer.flip().remaining()];
+        buffer.get(bytes);
+        assertEquals(TEST_TEXT, new String(bytes));
+        assertEquals(-1, channel.read(buffer.clear()));
+        assertEquals(0, buffer.position());
     }
 
     @Test
@@ -37,7 +43,7 @@ class InputStreamBackedChannelTest {
         final var stream = new ByteArrayInputStream(TEST_TEXT.getBytes());
         final var channel = new InputStreamBackedChannel(stream);
         final var buffer = ByteBuffer.allocateDirect(1024).asReadOnlyBuffer();
-        assertThrows(IllegalArgumentException.class, () -> channel.read(buffer));
+        assertThrows(ReadOnlyBufferException.class, () -> channel.read(buffer));
     }
 
     @Test
@@ -0,0 +1,51 @@
+package com.github.elopteryx.upload.util;
+
+import com.github.elopteryx.upload.BufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Buffer pool which keeps track of the buffers acquired from the delegate pool,
+ * so the tests can check whether every one of them was released, exactly once.
+ */
+public class LeakDetectingBufferPool implements BufferPool {
+
+    private final BufferPool delegate;
+
+    private final Set<ByteBuffer> acquired = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private int acquireCount;
+
+    public LeakDetectingBufferPool(final BufferPool delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized ByteBuffer acquire(final int capacity, final boolean direct) {
+        final var buffer = delegate.acquire(capacity, direct);
+        if (!acquired.add(buffer)) {
+            throw new IllegalStateException("The buffer is already in use!");
+        }
+        acquireCount++;
+        return buffer;
+    }
+
+    @Override
+    public synchronized void release(final ByteBuffer buffer) {
+        if (!acquired.remove(buffer)) {
+            throw new IllegalStateException("The buffer was not acquired or was already released!");
+        }
+        delegate.release(buffer);
+    }
+
+    public synchronized int getAcquireCount() {
+        return acquireCount;
+    }
+
+    public synchronized int getLeakCount() {
+        return acquired.size();
+    }
+}
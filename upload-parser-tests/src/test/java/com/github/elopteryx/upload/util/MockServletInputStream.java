@@ -42,6 +42,10 @@ public class MockServletInputStream extends ServletInputStream {
         readListener.onDataAvailable();
     }
 
+    public void onError(final Throwable throwable) {
+        readListener.onError(throwable);
+    }
+
     @Override
     public int read() {
         return this.sourceStream.read();
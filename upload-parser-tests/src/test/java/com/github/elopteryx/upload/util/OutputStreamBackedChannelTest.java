@@ -1,6 +1,7 @@
 package com.github.elopteryx.upload.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -25,19 +26,32 @@ class OutputStreamBackedChannelTest {
     }
 
     @Test
-    void try_to_write_from_direct_buffer() {
+    void write_from_direct_buffer() throws IOException {
         final var stream = new ByteArrayOutputStream(1024);
         final var channel = new OutputStreamBackedChannel(stream);
-        final var buffer = ByteBuffer.allocateDirect(0);
-        assertThrows(IllegalArgumentException.class, () -> channel.write(buffer));
+        final var buffer = ByteBuffer.allocateDirect(TEST_TEXT.length()).put(TEST_TEXT.getBytes()).flip();
+        assertEquals(TEST_TEXT.length(), channel.write(buffer));
+        assertFalse(buffer.hasRemaining());
+        assertEquals(TEST_TEXT, stream.toString());
     }
 
     @Test
-    void try_to_write_from_read_only_buffer() {
+    void write_from_read_only_buffer() throws IOException {
         final var stream = new ByteArrayOutputStream(1024);
         final var channel = new OutputStreamBackedChannel(stream);
-        final var buffer = ByteBuffer.allocate(0).asReadOnlyBuffer();
-        assertThrows(IllegalArgumentException.class, () -> channel.write(buffer));
+        final var buffer = ByteBuffer.wrap(TEST_TEXT.getBytes()).asReadOnlyBuffer();
+        assertEquals(TEST_TEXT.length(), channel.write(buffer));
+        assertEquals(TEST_TEXT, stream.toString());
+    }
+
+    @Test
+    void write_from_sliced_buffer() throws IOException {
+        final var stream = new ByteArrayOutputStream(1024);
+        final var channel = new OutputStreamBackedChannel(stream);
+        final var buffer = ByteBuffer.wrap(("xx" + TEST_TEXT).getBytes()).position(2).slice();
+        buffer.position(1);
+        channel.write(buffer);
+        assertEquals(TEST_TEXT.substring(1), stream.toString());
     }
 
     @Test